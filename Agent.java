@@ -1,5 +1,8 @@
 package minesweeper;
 
+import java.util.List;
+import java.util.ArrayList;
+
 public interface Agent{
 	//Data class to be given to a `minesweeper.Game` as instructions for what to do
 	public static class Action{
@@ -19,5 +22,17 @@ public interface Agent{
 		//Override me
 		return null;
 	};
+	public static String profileReport(){
+		//Override me to report anything the strategy measured about itself, StrategyTest prints it when run with -profile
+		return null;
+	}
 	public Action getMove();
+	//Agents that find several moves at once can hand them all over together
+	//They get made in order until the game ends, so later ones shouldn't depend on the results of earlier ones
+	//There always has to be at least 1, an empty list is an error just like a null move
+	public default List<Action> getMoves(){
+		List<Action> moves = new ArrayList<>(1);
+		moves.add(this.getMove());
+		return moves;
+	}
 }
\ No newline at end of file
@@ -11,25 +11,14 @@ import java.io.FileNotFoundException;
 import java.text.ParseException;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.function.Consumer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.io.BufferedWriter;
 import java.io.IOException;
 
 public class Game{
-	//Data class for a cell on a minesweeper board
-	protected static class Tile{
-		public final int number;
-		public boolean open = false;
-		public boolean flagged;
-		public Tile(int number){
-			this(number, false);
-		}
-		public Tile(int number, boolean flagged){
-			this.number = number;
-			this.flagged = flagged;
-		}
-	}
 	//Data class representing 2d indices
 	public static class Location{
 		public final int row;
@@ -40,6 +29,39 @@ public class Game{
 			this.col=col;
 			this.hash=(row+col)*(row+col+1)/2+row;
 		}
+		//Shared instances for every location on the biggest board made so far
+		//Rows are never modified after being published, so lookups don't need any locking
+		private static volatile Location[][] canonical = new Location[0][];
+		public static Location of(int row, int col){
+			Location[][] table = canonical;
+			if(row>=0 && col>=0 && row<table.length && col<table[row].length){
+				return table[row][col];
+			}
+			return new Location(row, col);
+		}
+		//Makes sure of() will give shared instances for a board of this size
+		protected static void reserve(int height, int width){
+			Location[][] table = canonical;
+			if(table.length>=height && (height==0 || table[0].length>=width)){
+				return;
+			}
+			synchronized(Location.class){
+				table = canonical;
+				int old_width = table.length==0 ? 0 : table[0].length;
+				if(table.length>=height && old_width>=width){
+					return;
+				}
+				Location[][] grown = new Location[Math.max(height, table.length)][];
+				for(int r=0; r<grown.length; r++){
+					grown[r] = new Location[Math.max(width, old_width)];
+					for(int c=0; c<grown[r].length; c++){
+						//Keep the instances that were already handed out so they stay canonical
+						grown[r][c] = r<table.length && c<old_width ? table[r][c] : new Location(r, c);
+					}
+				}
+				canonical = grown;
+			}
+		}
 		public String toString(){
 			return String.format("(%d,%d)",this.row,this.col);
 		}
@@ -47,6 +69,9 @@ public class Game{
 			return this.hash;
 		}
 		public boolean equals(Object other){
+			if(this==other){
+				return true;
+			}
 			if(other instanceof Location){
 				Location loc = (Location) other;
 				return loc.row==this.row && loc.col==this.col;
@@ -75,10 +100,55 @@ public class Game{
 	public static final int MINE = 9;
 	public static final int UNKNOWN = -1;
 
+	//Directions of the 8 neighbors of a tile, in the same order that neighbors() lists them
+	//The arrays stay private so an agent can't change them for every game, agents go through neighborRow and neighborCol
+	public static final int NEIGHBORS = 8;
+	private static final int[] NEIGHBOR_ROWS = {-1,-1,-1,0,0,1,1,1};
+	private static final int[] NEIGHBOR_COLS = {-1,0,1,-1,1,-1,0,1};
+	public static int neighborRow(int d){
+		return NEIGHBOR_ROWS[d];
+	}
+	public static int neighborCol(int d){
+		return NEIGHBOR_COLS[d];
+	}
+	//Which directions stay on the board, depending on which edges a tile is touching
+	private static final int[] EDGE_MASKS = new int[16];
+	static{
+		for(int edges=0; edges<EDGE_MASKS.length; edges++){
+			for(int d=0; d<NEIGHBOR_ROWS.length; d++){
+				boolean off_board = (NEIGHBOR_ROWS[d]==-1 && (edges&1)!=0) || (NEIGHBOR_ROWS[d]==1 && (edges&2)!=0)
+					|| (NEIGHBOR_COLS[d]==-1 && (edges&4)!=0) || (NEIGHBOR_COLS[d]==1 && (edges&8)!=0);
+				if(!off_board){
+					EDGE_MASKS[edges] |= 1<<d;
+				}
+			}
+		}
+	}
+
 	//Internal book-keeping
 	private int safe_opened;
 	protected State state = State.BEFORE;
-	protected Tile[][] full_board = null;
+	//Hidden state of every cell, indexed by row*width+col
+	//The number is UNKNOWN until the board is generated, and the status holds the OPEN and FLAGGED bits
+	protected byte[] numbers = null;
+	protected byte[] status = null;
+	protected static final byte OPEN = 1;
+	protected static final byte FLAGGED = 2;
+	//Connected areas of 0 tiles, found with union-find when the board is generated
+	//Region k is region_cells[region_start[k]] to region_cells[region_start[k+1]-1], its 0 tiles followed by the numbers bordering them
+	private int[] zero_region = null;
+	private int[] region_start = null;
+	private int[] region_cells = null;
+	//Same as NEIGHBOR_ROWS and NEIGHBOR_COLS but as distances in the flat arrays
+	private int[] neighbor_offsets = null;
+	//Every tile that changed in the board view, in order, as row*width+col next to the version it changed at
+	//An entry stops mattering once its tile changes again, so those get dropped when the log fills up instead of it growing forever
+	private int[] change_log = new int[16];
+	private int[] change_versions = new int[16];
+	private int logged = 0;
+	private int changes = 0;
+	//The version each tile last changed at, -1 for never
+	private int[] last_change = null;
 
 	protected Agent ai;
 
@@ -112,7 +182,7 @@ public class Game{
 		this.zero_start = false;
 		this.init();
 		for(Location mine : mine_locations){
-			this.full_board[mine.row][mine.col] = new Tile(MINE);
+			this.numbers[this.index(mine)] = MINE;
 		}
 		this.assignNumbers();
 	}
@@ -130,17 +200,19 @@ public class Game{
 		this.init();
 	}
 	private void init(){
+		Location.reserve(height, width);
 		this.safe_opened = (height*width)-mines;
 		this.minecount = mines;
 		this.board = new int[height][width];
 		for(int[] row : this.board){
 			Arrays.fill(row, UNKNOWN);
 		}
-		this.full_board = new Tile[height][width];
-		for(int r=0; r<this.height; r++){
-			for(int c=0; c<this.width; c++){
-				this.full_board[r][c] = new Tile(UNKNOWN);
-			}
+		this.numbers = new byte[height*width];
+		Arrays.fill(this.numbers, (byte)UNKNOWN);
+		this.status = new byte[height*width];
+		this.neighbor_offsets = new int[NEIGHBOR_ROWS.length];
+		for(int d=0; d<NEIGHBOR_ROWS.length; d++){
+			this.neighbor_offsets[d] = NEIGHBOR_ROWS[d]*width+NEIGHBOR_COLS[d];
 		}
 	}
 
@@ -156,36 +228,127 @@ public class Game{
 				if (Math.abs(first_loc.row-r)<=distance_threshold && Math.abs(first_loc.col-c)<=distance_threshold){
 					continue;
 				}
-				locations.add(new Location(r,c));
+				locations.add(Location.of(r,c));
 			}
 		}
 		//Select `mines` of those locations randomly
 		for(int i=locations.size()-1; i>=locations.size()-mines; i--){
 			int swap_idx = random.nextInt(i+1);
 			Location mine = locations.get(swap_idx);
-			this.full_board[mine.row][mine.col] = new Tile(MINE, this.full_board[mine.row][mine.col].flagged);
+			this.numbers[this.index(mine)] = MINE;
 			locations.set(swap_idx, locations.get(i));
 		}
 		this.assignNumbers();
 	}
-	private void assignNumbers(){
+	//Package private so the benchmarks can time it on its own
+	final void assignNumbers(){
 		//Assign numbers to all the other tiles based on how many mines they border
 		for(int r=0; r<this.height; r++){
 			for(int c=0; c<this.width; c++){
-				if(this.full_board[r][c].number != MINE){
+				int i = r*this.width+c;
+				if(this.numbers[i] != MINE){
 					int count = 0;
-					for(Location l : this.neighbors(new Location(r,c))){
-						if(this.full_board[l.row][l.col]!=null && this.full_board[l.row][l.col].number == MINE){
+					for(int m=this.neighborMask(r,c); m!=0; m&=m-1){
+						if(this.numbers[i+this.neighbor_offsets[Integer.numberOfTrailingZeros(m)]] == MINE){
 							count++;
 						}
 					}
-					boolean flag = this.full_board[r][c].flagged;
-					this.full_board[r][c] = new Tile(count, this.full_board[r][c].flagged);
+					this.numbers[i] = (byte)count;
 				}
 			}
 		}
+		this.findZeroRegions();
 		this.state = State.READY;
 	}
+	private void findZeroRegions(){
+		final int size = this.height*this.width;
+		//Union every 0 tile with the 0 tiles after it, which are the last 4 directions
+		int[] parent = new int[size];
+		for(int i=0; i<size; i++){
+			parent[i] = i;
+		}
+		for(int r=0; r<this.height; r++){
+			for(int c=0; c<this.width; c++){
+				int i = r*this.width+c;
+				if(this.numbers[i] != 0){
+					continue;
+				}
+				for(int m=this.neighborMask(r,c)&0xF0; m!=0; m&=m-1){
+					int n = i+this.neighbor_offsets[Integer.numberOfTrailingZeros(m)];
+					if(this.numbers[n]==0){
+						parent[Game.find(parent, i)] = Game.find(parent, n);
+					}
+				}
+			}
+		}
+		//Number the regions and sort the 0 tiles by region
+		this.zero_region = new int[size];
+		Arrays.fill(this.zero_region, -1);
+		int[] root_region = new int[size];
+		Arrays.fill(root_region, -1);
+		int regions = 0;
+		for(int i=0; i<size; i++){
+			if(this.numbers[i]==0){
+				int root = Game.find(parent, i);
+				if(root_region[root]==-1){
+					root_region[root] = regions++;
+				}
+				this.zero_region[i] = root_region[root];
+			}
+		}
+		int[] zeros_start = new int[regions+1];
+		for(int i=0; i<size; i++){
+			if(this.zero_region[i]!=-1){
+				zeros_start[this.zero_region[i]+1]++;
+			}
+		}
+		for(int k=0; k<regions; k++){
+			zeros_start[k+1] += zeros_start[k];
+		}
+		int[] zeros = new int[zeros_start[regions]];
+		int[] fill = Arrays.copyOf(zeros_start, regions);
+		for(int i=0; i<size; i++){
+			if(this.zero_region[i]!=-1){
+				zeros[fill[this.zero_region[i]]++] = i;
+			}
+		}
+		//Attach the border of each region after its 0 tiles
+		this.region_start = new int[regions+1];
+		int[] cells = new int[zeros.length*2+1];
+		int length = 0;
+		int[] seen = new int[size];
+		Arrays.fill(seen, -1);
+		for(int k=0; k<regions; k++){
+			this.region_start[k] = length;
+			for(int j=zeros_start[k]; j<zeros_start[k+1]; j++){
+				if(length==cells.length){
+					cells = Arrays.copyOf(cells, length*2);
+				}
+				cells[length++] = zeros[j];
+			}
+			for(int j=zeros_start[k]; j<zeros_start[k+1]; j++){
+				for(int m=this.neighborMask(zeros[j]/this.width, zeros[j]%this.width); m!=0; m&=m-1){
+					int n = zeros[j]+this.neighbor_offsets[Integer.numberOfTrailingZeros(m)];
+					if(this.numbers[n]!=0 && seen[n]!=k){
+						seen[n] = k;
+						if(length==cells.length){
+							cells = Arrays.copyOf(cells, length*2);
+						}
+						cells[length++] = n;
+					}
+				}
+			}
+		}
+		this.region_start[regions] = length;
+		this.region_cells = cells;
+	}
+	private static int find(int[] parent, int i){
+		while(parent[i]!=i){
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
 
 	public void flag(Location loc){
 		if(!in_bounds(loc)){
@@ -194,13 +357,14 @@ public class Game{
 		if(this.state.compareTo(State.ACTIVE) > 0){
 			return;
 		}
-		Tile t = this.full_board[loc.row][loc.col];
-		if(t.open){
+		int i = this.index(loc);
+		if((this.status[i] & OPEN) != 0){
 			return;
 		}
-		t.flagged = !t.flagged;
-		this.board_view_set(loc, (t.flagged ? MINE : UNKNOWN));
-		this.setMinecount(this.minecount + (t.flagged ? -1 : 1));
+		this.status[i] ^= FLAGGED;
+		boolean flagged = (this.status[i] & FLAGGED) != 0;
+		this.board_view_set(loc, (flagged ? MINE : UNKNOWN));
+		this.setMinecount(this.minecount + (flagged ? -1 : 1));
 
 	}
 	public void open(Location loc){
@@ -216,24 +380,73 @@ public class Game{
 		if(this.state != State.ACTIVE){
 			return;
 		}
-		if(this.full_board[loc.row][loc.col].flagged || this.full_board[loc.row][loc.col].open){
+		int i = this.index(loc);
+		if(this.status[i] != 0){
 			return;
 		}
-		this.full_board[loc.row][loc.col].open = true;
-		int n = this.full_board[loc.row][loc.col].number;
-		this.board_view_set(loc, n);
+		int n = this.numbers[i];
+		int opened = 1;
 		if(n==0){
-			for(Location l : this.neighbors(loc)){
-				this.open(l);
-			}
+			opened = this.openRegion(i);
+		}
+		else{
+			this.reveal(i);
 		}
 		if(n==MINE){
 			this.setState(State.LOSE);
 		}
-		else if(--this.safe_opened == 0){
+		else if((this.safe_opened -= opened) == 0){
 			this.setState(State.WIN);
 		}
 	}
+	private void reveal(int i){
+		this.status[i] |= OPEN;
+		this.board_view_set(Location.of(i/this.width, i%this.width), this.numbers[i]);
+	}
+	//Opens everything connected to the 0 tile at start and returns how many tiles that was
+	private int openRegion(int start){
+		int k = this.zero_region[start];
+		int from = this.region_start[k];
+		int to = this.region_start[k+1];
+		boolean untouched = true;
+		for(int j=from; j<to && this.numbers[this.region_cells[j]]==0; j++){
+			if(this.status[this.region_cells[j]] != 0){
+				untouched = false;
+				break;
+			}
+		}
+		int opened = 0;
+		if(untouched){
+			for(int j=from; j<to; j++){
+				int cell = this.region_cells[j];
+				if(this.status[cell] == 0){
+					this.reveal(cell);
+					opened++;
+				}
+			}
+			return opened;
+		}
+		//Flags or an earlier opening can cut the region apart, so spread out tile by tile instead
+		int[] stack = new int[to-from];
+		int top = 0;
+		this.reveal(start);
+		opened++;
+		stack[top++] = start;
+		while(top>0){
+			int cell = stack[--top];
+			for(int m=this.neighborMask(cell/this.width, cell%this.width); m!=0; m&=m-1){
+				int n = cell+this.neighbor_offsets[Integer.numberOfTrailingZeros(m)];
+				if(this.status[n] == 0){
+					this.reveal(n);
+					opened++;
+					if(this.numbers[n]==0){
+						stack[top++] = n;
+					}
+				}
+			}
+		}
+		return opened;
+	}
 
 
 	public State getState(){
@@ -247,6 +460,51 @@ public class Game{
 		this.minecount = n;
 	}
 
+	//Goes up by 1 every time a tile changes in the board view
+	public int getVersion(){
+		return this.changes;
+	}
+	//Every tile that has changed since getVersion() returned version, in the order they last changed
+	//Agents can use this to look at only the part of the board that's new instead of all of it
+	public Set<Location> changedSince(int version){
+		Set<Location> changed = new LinkedHashSet<>();
+		this.forEachChangedSince(version, changed::add);
+		return changed;
+	}
+	//Same as changedSince without making a set, each tile is given once
+	public void forEachChangedSince(int version, Consumer<Location> action){
+		if(version<0 || version>this.changes){
+			throw new IllegalArgumentException(String.format("Version %d doesn't exist",version));
+		}
+		int start = Arrays.binarySearch(this.change_versions, 0, this.logged, version);
+		if(start<0){
+			start = -start-1;
+		}
+		for(int i=start; i<this.logged; i++){
+			int idx = this.change_log[i];
+			//Only the tile's last change is given, which is also what keeps it to once
+			if(this.last_change[idx]==this.change_versions[i]){
+				action.accept(Location.of(idx/this.width, idx%this.width));
+			}
+		}
+	}
+	private void compactChangeLog(){
+		int kept = 0;
+		for(int i=0; i<this.logged; i++){
+			if(this.last_change[this.change_log[i]]==this.change_versions[i]){
+				this.change_log[kept] = this.change_log[i];
+				this.change_versions[kept] = this.change_versions[i];
+				kept++;
+			}
+		}
+		this.logged = kept;
+		//Every tile has at most 1 entry left, so this only grows until it's twice the board
+		if(this.logged*2>this.change_log.length){
+			this.change_log = Arrays.copyOf(this.change_log, this.change_log.length*2);
+			this.change_versions = Arrays.copyOf(this.change_versions, this.change_versions.length*2);
+		}
+	}
+
 
 	//This setter is here in case a player screws with the board
 	//It is fine if they do that cause it would not affect the games functioning
@@ -254,6 +512,19 @@ public class Game{
 		if(loc.row<this.board.length && loc.col<this.board[loc.row].length){
 			this.board[loc.row][loc.col] = value;
 		}
+		if(this.last_change==null){
+			this.last_change = new int[this.height*this.width];
+			Arrays.fill(this.last_change, -1);
+		}
+		if(this.logged==this.change_log.length){
+			this.compactChangeLog();
+		}
+		int idx = this.index(loc);
+		this.change_log[this.logged] = idx;
+		this.change_versions[this.logged] = this.changes;
+		this.logged++;
+		this.last_change[idx] = this.changes;
+		this.changes++;
 	}
 
 	public void attach(Agent a){
@@ -270,6 +541,21 @@ public class Game{
 			this.flag(move.location);
 		}
 	}
+	protected void process_actions(List<Agent.Action> moves){
+		if(moves == null){
+			throw new NullPointerException("AI returned a null list of moves");
+		}
+		if(moves.isEmpty()){
+			//Otherwise ai_play would keep asking forever
+			throw new IllegalArgumentException("AI returned an empty list of moves");
+		}
+		for(Agent.Action move : moves){
+			if(this.state.compareTo(State.ACTIVE) > 0){
+				return;
+			}
+			this.process_action(move);
+		}
+	}
 	public void ai_move(){
 		if(this.ai == null){
 			return;
@@ -282,25 +568,41 @@ public class Game{
 			return;
 		}
 		while(this.state.compareTo(State.ACTIVE) <= 0){
-			this.ai_move();
+			this.process_actions(this.ai.getMoves());
 		}
 	}
 
+	protected final int index(Location loc){
+		return loc.row*this.width+loc.col;
+	}
+	//Accessors for the hidden state, for derived classes that display it
+	protected final int number(Location loc){
+		return this.numbers[this.index(loc)];
+	}
+	protected final boolean opened(Location loc){
+		return (this.status[this.index(loc)] & OPEN) != 0;
+	}
+	protected final boolean flagged(Location loc){
+		return (this.status[this.index(loc)] & FLAGGED) != 0;
+	}
+
 	private boolean in_bounds(Location pt){
 		return pt.row>=0 && pt.col>=0 && pt.row<this.height && pt.col<this.width;
 	}
+	//Bit d is set if the tile has a neighbor in direction d of neighborRow and neighborCol
+	//Looping over these bits visits every neighbor without allocating anything
+	public final int neighborMask(int row, int col){
+		return EDGE_MASKS[(row==0 ? 1 : 0) | (row==this.height-1 ? 2 : 0) | (col==0 ? 4 : 0) | (col==this.width-1 ? 8 : 0)];
+	}
 	protected final Location[] neighbors(Location loc){
-		Location[] locations = new Location[]{
-			new Location(loc.row-1, loc.col-1),
-			new Location(loc.row-1, loc.col),
-			new Location(loc.row-1, loc.col+1),
-			new Location(loc.row, loc.col-1),
-			new Location(loc.row, loc.col+1),
-			new Location(loc.row+1, loc.col-1),
-			new Location(loc.row+1, loc.col),
-			new Location(loc.row+1, loc.col+1)
-		};
-		return Arrays.stream(locations).filter(this::in_bounds).toArray(Location[]::new);
+		int mask = this.neighborMask(loc.row, loc.col);
+		Location[] locations = new Location[Integer.bitCount(mask)];
+		int i = 0;
+		for(int m=mask; m!=0; m&=m-1){
+			int d = Integer.numberOfTrailingZeros(m);
+			locations[i++] = Location.of(loc.row+NEIGHBOR_ROWS[d], loc.col+NEIGHBOR_COLS[d]);
+		}
+		return locations;
 	}
 
 	public void export(String filename) throws IOException{
@@ -312,7 +614,8 @@ public class Game{
 			file.write(String.format("%dx%d\n",this.height, this.width));
 			for(int r=0; r<this.height; r++){
 				for(int c=0; c<this.width; c++){
-					if(this.state!=State.BEFORE ? this.full_board[r][c].number==MINE : this.full_board[r][c].flagged){
+					int i = r*this.width+c;
+					if(this.state!=State.BEFORE ? this.numbers[i]==MINE : (this.status[i] & FLAGGED) != 0){
 						file.write(String.format("%d,%d\n",r,c));
 					}
 				}
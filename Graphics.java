@@ -157,15 +157,15 @@ public final class Graphics {
             }
 
             // Method to reveal the tile at the end of the game.
-            public void revealEndgame(Tile info) {
-                if (info.number == MINE) {
-                    if (!info.flagged) {
+            public void revealEndgame(int number, boolean open, boolean flagged) {
+                if (number == MINE) {
+                    if (!flagged) {
                         this.setIcon(icons.get("mine"));
                     }
-                    if (info.open) {
+                    if (open) {
                         this.setBackground(Color.RED);
                     }
-                } else if (info.flagged) {
+                } else if (flagged) {
                     this.setIcon(icons.get("wrong_flag"));
                 }
             }
@@ -208,13 +208,12 @@ public final class Graphics {
             this.counter.setText(String.format("%0" + length + "d", this.minecount));
         }
 
-        // Method to open a tile.
-        public void open(Location loc) {
-            super.open(loc);
-            if (this.full_board[loc.row][loc.col].open) {
-                int n = this.full_board[loc.row][loc.col].number;
+        // Method to show a tile once it has been opened, including every tile opened along with a 0.
+        protected void board_view_set(Location loc, int value) {
+            super.board_view_set(loc, value);
+            if (this.opened(loc)) {
                 Graphics.invokeSafe(() -> {
-                    this.tiles[loc.row][loc.col].revealAs(n);
+                    this.tiles[loc.row][loc.col].revealAs(value);
                 });
             }
         }
@@ -225,9 +224,9 @@ public final class Graphics {
             if (this.state.compareTo(State.ACTIVE) > 0) {
                 return;
             }
-            if (!this.full_board[loc.row][loc.col].open) {
+            if (!this.opened(loc)) {
                 Graphics.invokeSafe(() -> {
-                    this.tiles[loc.row][loc.col].setFlag(this.full_board[loc.row][loc.col].flagged);
+                    this.tiles[loc.row][loc.col].setFlag(this.flagged(loc));
                 });
             }
         }
@@ -267,7 +266,8 @@ public final class Graphics {
             Graphics.invokeSafe(() -> {
                 for (int r = 0; r < this.height; r++) {
                     for (int c = 0; c < this.width; c++) {
-                        this.tiles[r][c].revealEndgame(this.full_board[r][c]);
+                        Location loc = Location.of(r, c);
+                        this.tiles[r][c].revealEndgame(this.number(loc), this.opened(loc), this.flagged(loc));
                     }
                 }
             });
@@ -280,7 +280,8 @@ public final class Graphics {
             Graphics.invokeSafe(() -> {
                 for (int r = 0; r < this.height; r++) {
                     for (int c = 0; c < this.width; c++) {
-                        if (this.full_board[r][c].number == MINE && !this.full_board[r][c].flagged) {
+                        Location loc = Location.of(r, c);
+                        if (this.number(loc) == MINE && !this.flagged(loc)) {
                             this.tiles[r][c].setFlag(true);
                         }
                     }
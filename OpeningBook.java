@@ -0,0 +1,314 @@
+package minesweeper;
+import java.util.Scanner;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.text.ParseException;
+
+//The best tile to open first for each board configuration, measured by running main on it
+//Every line of the file is like `16x30x99 zero 2 3`, with `classic` for boards that don't start on a 0, and anything after a # is a note
+public class OpeningBook{
+	public static final String DEFAULT_FILE = "assets/openings.txt";
+
+	private static class Entry{
+		final Game.Location location;
+		final String note;
+		Entry(Game.Location location, String note){
+			this.location = location;
+			this.note = note;
+		}
+	}
+	private final Map<String, Entry> openings = new TreeMap<>();
+
+	private static String key(int height, int width, int mines, boolean zero_start){
+		return String.format("%dx%dx%d %s", height, width, mines, zero_start ? "zero" : "classic");
+	}
+	//Where to open first, or null if this configuration hasn't been measured
+	public Game.Location get(int height, int width, int mines, boolean zero_start){
+		Entry e = this.openings.get(OpeningBook.key(height, width, mines, zero_start));
+		return e==null ? null : e.location;
+	}
+	public void put(int height, int width, int mines, boolean zero_start, Game.Location location, String note){
+		this.openings.put(OpeningBook.key(height, width, mines, zero_start), new Entry(location, note));
+	}
+	public void remove(int height, int width, int mines, boolean zero_start){
+		this.openings.remove(OpeningBook.key(height, width, mines, zero_start));
+	}
+
+	//A missing file is just an empty book
+	public static OpeningBook load(String filename) throws IOException, ParseException{
+		OpeningBook book = new OpeningBook();
+		Path path = Paths.get(filename);
+		if(!Files.exists(path)){
+			return book;
+		}
+		try(Scanner file = new Scanner(Files.newBufferedReader(path))){
+			for(int line = 1; file.hasNextLine(); line++){
+				String text = file.nextLine();
+				String note = null;
+				int hash = text.indexOf('#');
+				if(hash>=0){
+					note = text.substring(hash+1).strip();
+					text = text.substring(0, hash);
+				}
+				if(text.isBlank()){
+					continue;
+				}
+				String[] fields = text.strip().split("\\s+");
+				int height, width, mines, row, col;
+				boolean zero_start;
+				try{
+					Scanner dimensions = new Scanner(fields[0]).useDelimiter("x");
+					height = dimensions.nextInt();
+					width = dimensions.nextInt();
+					mines = dimensions.nextInt();
+					if(!fields[1].equals("zero") && !fields[1].equals("classic")){
+						throw new IllegalArgumentException(fields[1]);
+					}
+					zero_start = fields[1].equals("zero");
+					row = Integer.parseInt(fields[2]);
+					col = Integer.parseInt(fields[3]);
+				}
+				catch(Exception e){
+					throw new ParseException(String.format("%s line %d: expected HxWxM zero|classic row col", filename, line), line);
+				}
+				if(row<0 || col<0 || row>=height || col>=width){
+					throw new ParseException(String.format("%s line %d: %d,%d is out of bounds for %dx%d", filename, line, row, col, height, width), line);
+				}
+				book.put(height, width, mines, zero_start, Game.Location.of(row, col), note);
+			}
+		}
+		return book;
+	}
+	public void save(String filename) throws IOException{
+		Path path = Paths.get(filename);
+		if(path.getParent()!=null){
+			Files.createDirectories(path.getParent());
+		}
+		try(BufferedWriter file = Files.newBufferedWriter(path)){
+			file.write("# Best first moves, made by running minesweeper.OpeningBook\n");
+			for(Map.Entry<String, Entry> e : this.openings.entrySet()){
+				Entry entry = e.getValue();
+				file.write(String.format("%s %d %d", e.getKey(), entry.location.row, entry.location.col));
+				if(entry.note!=null && entry.note.length()>0){
+					file.write(" # "+entry.note);
+				}
+				file.write("\n");
+			}
+		}
+	}
+
+	//Opens a fixed tile first and then lets the strategy play the rest
+	private static class Opening implements Agent{
+		private final Game game;
+		private final Agent strategy;
+		private final Game.Location first;
+		Opening(Game game, Agent strategy, Game.Location first){
+			this.game = game;
+			this.strategy = strategy;
+			this.first = first;
+		}
+		public Agent.Action getMove(){
+			if(this.game.getState()==Game.State.BEFORE){
+				return new Agent.Action(Agent.Action.Type.OPEN, this.first);
+			}
+			return this.strategy.getMove();
+		}
+		public List<Agent.Action> getMoves(){
+			if(this.game.getState()==Game.State.BEFORE){
+				return List.of(new Agent.Action(Agent.Action.Type.OPEN, this.first));
+			}
+			return this.strategy.getMoves();
+		}
+	}
+
+	//How many standard errors the best tile has to win by over the strategy's own first move to go in the book
+	//The best out of dozens of tiles beats it by 2 fairly often just by luck
+	public static final double SIGNIFICANCE = 3.0;
+
+	//Plays the same seeds starting from every candidate tile and from the strategy's own first move
+	//The tile that wins the most goes in the book if it does significantly better than the strategy would by itself
+	//Boards look the same flipped either way, so only the top left quarter needs trying
+	public static void main(String[] args) throws Exception{
+		long seed = new Random().nextLong();
+
+		int trials = 1000;
+		int height = 16;
+		int width = 30;
+		int mines = 99;
+		boolean zero_start = true;
+		int threads = 1;
+		int reach = Integer.MAX_VALUE;
+		String filename = DEFAULT_FILE;
+
+		String class_name = "minesweeper.strategies.LitStrategy";
+
+		for(String arg : args){
+			if(arg.matches(".*-h.*")){
+				System.out.printf("""
+Extra options you can put:
+  ^(\\d+)x(\\d+)x(\\d+)$     the height, width and number of mines, default %dx%dx%d
+  ^\\d+$                   the number of games played from each candidate tile, default %d
+  -h                      prints this message
+  ^-seed\\d*               the seed to be used for RNG, default is random
+  ^-classic$              removes the guarantee that the first tile opened will be 0
+  ^-reach\\d+$             only tries tiles at most this many rows and columns from the top left corner
+  ^-threads\\d*            the number of games run in parallel, default %d, with no number it uses every core
+  ^-book.+$               the file the result gets added to, default %s
+  anything else           the class name for the strategy that will be tested, default %s\n""",height,width,mines,trials,threads,filename,class_name);
+				return;
+			}
+			else if(arg.matches("^(\\d+)x(\\d+)x(\\d+)$")){
+				Scanner dimensions = new Scanner(arg).useDelimiter("x");
+				height = dimensions.nextInt();
+				width = dimensions.nextInt();
+				mines = dimensions.nextInt();
+			}
+			else if(arg.matches("^\\d+$")){
+				trials = Integer.parseInt(arg);
+			}
+			else if(arg.matches("^-seed\\d*.*")){
+				String numbers = arg.replaceAll("[^0-9]","");
+				if(numbers.length()==0){
+					numbers = "0";
+				}
+				seed = Long.parseUnsignedLong(numbers);
+			}
+			else if(arg.matches("^-classic$")){
+				zero_start = false;
+			}
+			else if(arg.matches("^-reach\\d+$")){
+				reach = Integer.parseInt(arg.replaceAll("[^0-9]",""));
+			}
+			else if(arg.matches("^-threads\\d*$")){
+				String numbers = arg.replaceAll("[^0-9]","");
+				threads = numbers.length()==0 ? Runtime.getRuntime().availableProcessors() : Math.max(1, Integer.parseInt(numbers));
+			}
+			else if(arg.matches("^-book.+$")){
+				filename = arg.substring("-book".length());
+			}
+			else{
+				class_name = arg;
+			}
+		}
+
+		System.out.printf("Seed %s\n", Long.toUnsignedString(seed));
+		//The strategy's own first move is measured without any book, has to be set before the strategy class gets loaded
+		System.setProperty("minesweeper.openingBook", "");
+		final Class<? extends Agent> ai_class = Class.forName(class_name).asSubclass(Agent.class);
+
+		List<Game.Location> candidates = new ArrayList<>();
+		for(int r=0; r<=Math.min((height-1)/2, reach); r++){
+			for(int c=0; c<=Math.min((width-1)/2, reach); c++){
+				candidates.add(Game.Location.of(r,c));
+			}
+		}
+		System.out.printf("Testing %s for %d games from each of %d tiles on a %dx%dx%d %sboard\n",
+			ai_class.getName(), trials, candidates.size(), height, width, mines, zero_start?"":"classic "
+		);
+
+		//The last one is for the strategy's own first move
+		final LongAdder[] won = new LongAdder[candidates.size()+1];
+		for(int i=0; i<won.length; i++){
+			won[i] = new LongAdder();
+		}
+		final int own = candidates.size();
+		final long base_seed = seed;
+		final int h = height, w = width, m = mines;
+		final boolean zs = zero_start;
+		//Every candidate plays the same seeds, but that doesn't make them the same boards
+		//The mines get placed around whichever tile is opened first, so each candidate's games count as their own sample
+		List<Callable<Void>> games = new ArrayList<>(won.length*trials);
+		for(int i=0; i<won.length; i++){
+			final int candidate = i;
+			final Game.Location first = i==own ? null : candidates.get(i);
+			for(int j=0; j<trials; j++){
+				final int idx = j;
+				games.add(() -> {
+					final StrategyTest game = new StrategyTest(h, w, m, zs);
+					game.seed = new Random(base_seed+idx).nextLong();
+					Agent a = (Agent)(ai_class.getDeclaredMethod("newAgent", Game.class).invoke(null, game));
+					game.attach(first==null ? a : new Opening(game, a, first));
+					game.ai_play();
+					if(game.getState()==Game.State.WIN){
+						won[candidate].increment();
+					}
+					return null;
+				});
+			}
+		}
+
+		if(threads<=1){
+			for(Callable<Void> game : games){
+				game.call();
+			}
+		}
+		else{
+			System.out.printf("Running on %d threads\n", threads);
+			ExecutorService pool = Executors.newWorkStealingPool(threads);
+			try{
+				for(Future<Void> result : pool.invokeAll(games)){
+					result.get();
+				}
+			}
+			catch(ExecutionException e){
+				if(e.getCause() instanceof Exception){
+					throw (Exception)e.getCause();
+				}
+				throw e;
+			}
+			finally{
+				pool.shutdownNow();
+			}
+		}
+
+		final long[] wins = new long[won.length];
+		for(int i=0; i<won.length; i++){
+			wins[i] = won[i].sum();
+		}
+		List<Integer> ranking = new ArrayList<>();
+		for(int i=0; i<candidates.size(); i++){
+			ranking.add(i);
+		}
+		ranking.sort((Integer a, Integer b) -> Long.compare(wins[b], wins[a]));
+		for(int i=0; i<Math.min(10, ranking.size()); i++){
+			int idx = ranking.get(i);
+			double rate = (double)wins[idx]/trials;
+			System.out.printf("%s %.4f +- %.4f\n", candidates.get(idx), rate, Math.sqrt(rate*(1-rate)/trials));
+		}
+		System.out.printf("Strategy's own first move %.4f\n", (double)wins[own]/trials);
+
+		//The two win rates come from different boards, so the standard error of the difference is Welch's, from each rate on its own
+		int best = ranking.get(0);
+		double best_rate = (double)wins[best]/trials;
+		double own_rate = (double)wins[own]/trials;
+		double error = Math.sqrt(best_rate*(1-best_rate)/trials + own_rate*(1-own_rate)/trials);
+		double z = error>0 ? (best_rate-own_rate)/error : (best_rate>own_rate ? Double.POSITIVE_INFINITY : 0);
+
+		OpeningBook book = OpeningBook.load(filename);
+		if(z>=SIGNIFICANCE){
+			book.put(height, width, mines, zero_start, candidates.get(best),
+				String.format("%.4f over %d games, %.4f without", (double)wins[best]/trials, trials, (double)wins[own]/trials)
+			);
+			System.out.printf("Saved %s to %s, %.1f standard errors better\n", candidates.get(best), filename, z);
+		}
+		else{
+			book.remove(height, width, mines, zero_start);
+			System.out.printf("%s is only %.1f standard errors better, left out of %s\n", candidates.get(best), z, filename);
+		}
+		book.save(filename);
+	}
+}
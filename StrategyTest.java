@@ -4,7 +4,19 @@ import java.text.DecimalFormat;
 import java.io.IOException;
 import java.util.concurrent.atomic.LongAccumulator;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Random;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntFunction;
 
 public class StrategyTest extends Game{
 	protected long startTime;
@@ -40,6 +52,9 @@ public class StrategyTest extends Game{
 		int width = 30;
 		int mines = 99;
 		boolean zero_start = true;
+		int threads = 1;
+		boolean profile = false;
+		String budget = null;
 
 		String class_name = "minesweeper.strategies.LitStrategy";
 
@@ -52,8 +67,11 @@ Extra options you can put:
   -h                      prints this message
   ^-seed\\d*               the seed to be used for RNG, default is random
   ^-classic$              removes the guarantee that the first tile opened will be 0
+  ^-profile$              turns on the strategy's own measurements and prints them at the end
+  ^-budget\\d+$            the most milliseconds the strategy should spend on a move, if it supports a budget
+  ^-threads\\d*            the number of trials run in parallel, default %d, with no number it uses every core
   anything else           the class name for the strategy that will be tested, default %s
-				""",height,width,mines,trials,class_name);
+				""",height,width,mines,trials,threads,class_name);
 				return;
 			}
 			else if(arg.matches("^(\\d+)x(\\d+)x(\\d+)$")){
@@ -75,12 +93,29 @@ Extra options you can put:
 			else if(arg.matches("^-classic$")){
 				zero_start = false;
 			}
+			else if(arg.matches("^-profile$")){
+				profile = true;
+			}
+			else if(arg.matches("^-budget\\d+$")){
+				budget = arg.replaceAll("[^0-9]","");
+			}
+			else if(arg.matches("^-threads\\d*$")){
+				String numbers = arg.replaceAll("[^0-9]","");
+				threads = numbers.length()==0 ? Runtime.getRuntime().availableProcessors() : Math.max(1, Integer.parseInt(numbers));
+			}
 			else{
 				class_name = arg;
 			}
 		}
 
 		System.out.printf("Seed %s\n", Long.toUnsignedString(seed));
+		if(profile){
+			//Has to be set before the strategy class gets loaded
+			System.setProperty("minesweeper.profile", "true");
+		}
+		if(budget!=null){
+			System.setProperty("minesweeper.timeBudget", budget);
+		}
 		final Class<? extends Agent> ai_class = Class.forName(class_name).asSubclass(Agent.class);
 		System.out.printf("Testing %s for %d games on a %dx%dx%d %sboard\n", ai_class.getName(), trials, height, width, mines, zero_start?"":"classic ");
 
@@ -90,6 +125,8 @@ Extra options you can put:
 		final LongAdder complete = new LongAdder();
 
 		final Runtime runtime = Runtime.getRuntime();
+		//The report also says how often the budget ran out
+		final boolean print_profile = profile || budget!=null;
 		Thread report_stats = new Thread(()->{
 			DecimalFormat f = new DecimalFormat("#.####");
 			double win_rate = wins.doubleValue()/complete.doubleValue();
@@ -100,14 +137,37 @@ Extra options you can put:
 				"\n%d wins out of %d - %s%%\n%s seconds total; %s maximum; %s average\n",
 				wins.sum(), complete.sum(), f.format(win_rate*100), f.format(elapsed_seconds), f.format(max_seconds), f.format(average_seconds)
 			);
+			if(print_profile){
+				try{
+					Object report = ai_class.getDeclaredMethod("profileReport").invoke(null);
+					System.out.println(report!=null ? report : "No profile was recorded");
+				}
+				catch(NoSuchMethodException e){
+					System.out.printf("%s doesn't define profileReport\n", ai_class.getName());
+				}
+				catch(Exception e){
+					System.out.printf("Failed to get the profile: %s\n", e);
+				}
+			}
 		});
 		runtime.addShutdownHook(report_stats);
 
-		for(int i=0; i<trials; i++){
-			final StrategyTest game = new StrategyTest(height,width,mines, zero_start);
-			game.seed = new Random(seed+i).nextLong();
+		final long base_seed = seed;
+		final int h = height, w = width, m = mines;
+		final boolean zs = zero_start;
+		//Once the jvm starts shutting down the report_stats hook prints the results, so nothing else should get run or reported
+		final AtomicBoolean shutting_down = new AtomicBoolean(false);
+		//The export hooks of the trials still running, so only the boards that failed get exported when one of them throws
+		final Map<Integer, Thread> exports = new ConcurrentHashMap<>();
+		final Set<Integer> failed = ConcurrentHashMap.newKeySet();
+		//Every trial derives its board from its own index so the results don't depend on how they get scheduled
+		IntFunction<Callable<Void>> trial = (int idx) -> () -> {
+			if(shutting_down.get()){
+				return null;
+			}
+			final StrategyTest game = new StrategyTest(h, w, m, zs);
+			game.seed = new Random(base_seed+idx).nextLong();
 
-			final int idx = i;
 			//Idk whether to run the rest of this in a thread or not
 			//A completed trial will run faster, but an interrupted trial could have misleading results
 			Thread export = new Thread(()->{
@@ -122,13 +182,30 @@ Extra options you can put:
 			Agent a = (Agent)(ai_class.getDeclaredMethod("newAgent", Game.class).invoke(null, game));
 			game.attach(a);
 			try{
-				runtime.addShutdownHook(export);
-				game.ai_play();
+				synchronized(exports){
+					if(!failed.isEmpty()){
+						//Another trial already threw, so this one won't be counted anyway
+						return null;
+					}
+					runtime.addShutdownHook(export);
+					exports.put(idx, export);
+				}
+				try{
+					game.ai_play();
+				}
+				catch(RuntimeException | Error e){
+					if(!(e instanceof IllegalStateException)){
+						failed.add(idx);
+					}
+					throw e;
+				}
+				exports.remove(idx);
 				runtime.removeShutdownHook(export);
 			}
 			catch(IllegalStateException e){
 				//This will happen when the jvm is already shutting down
-				return;
+				shutting_down.set(true);
+				return null;
 			}
 			long elapsed = game.endTime-game.startTime;
 			time.add(elapsed);
@@ -137,7 +214,47 @@ Extra options you can put:
 			if(game.getState()==State.WIN){
 				wins.increment();
 			}
-		
+			return null;
+		};
+
+		if(threads<=1){
+			for(int i=0; i<trials && !shutting_down.get(); i++){
+				trial.apply(i).call();
+			}
+		}
+		else{
+			System.out.printf("Running on %d threads\n", threads);
+			ExecutorService pool = Executors.newWorkStealingPool(threads);
+			List<Future<Void>> results = new ArrayList<>(trials);
+			for(int i=0; i<trials; i++){
+				results.add(pool.submit(trial.apply(i)));
+			}
+			try{
+				for(Future<Void> result : results){
+					result.get();
+				}
+			}
+			catch(ExecutionException e){
+				//The other trials that were still going didn't fail, so their boards shouldn't get exported
+				synchronized(exports){
+					for(Map.Entry<Integer, Thread> export : exports.entrySet()){
+						if(!failed.contains(export.getKey())){
+							runtime.removeShutdownHook(export.getValue());
+						}
+					}
+				}
+				//Rethrow what the strategy threw so it gets reported the same way as a single threaded run
+				if(e.getCause() instanceof Exception){
+					throw (Exception)e.getCause();
+				}
+				throw e;
+			}
+			finally{
+				pool.shutdownNow();
+			}
+		}
+		if(shutting_down.get()){
+			return;
 		}
 		report_stats.run();
 		runtime.removeShutdownHook(report_stats);
@@ -0,0 +1,81 @@
+package minesweeper;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark{
+	@State(Scope.Thread)
+	public static class Board{
+		@Param({"BEGINNER", "INTERMEDIATE", "EXPERT"})
+		public String difficulty;
+		Positions.Difficulty size;
+		Game game;
+		long seed = 0;
+
+		@Setup(Level.Trial)
+		public void setup(){
+			this.size = Positions.Difficulty.valueOf(this.difficulty);
+			this.game = GameBenchmark.generate(this.size, this.seed++);
+		}
+	}
+
+	//Boards that haven't had anything opened yet, so every invocation opens the same amount
+	//Opening one only takes microseconds, so each invocation gets a batch of them to keep the setup and timing overhead out of the score
+	@State(Scope.Thread)
+	public static class FreshBoards{
+		static final int BATCH = 100;
+		@Param({"BEGINNER", "INTERMEDIATE", "EXPERT"})
+		public String difficulty;
+		Game[] games = new Game[BATCH];
+		long seed = 0;
+
+		@Setup(Level.Invocation)
+		public void setup(){
+			Positions.Difficulty size = Positions.Difficulty.valueOf(this.difficulty);
+			for(int i=0; i<BATCH; i++){
+				this.games[i] = GameBenchmark.generate(size, this.seed++);
+			}
+		}
+	}
+
+	static Game generate(Positions.Difficulty d, long seed){
+		Game game = new Game(d.height, d.width, d.mines);
+		game.generateBoard(Game.Location.of(d.height/2, d.width/2), new Random(seed));
+		return game;
+	}
+
+	@Benchmark
+	public Game generateBoard(Board b){
+		return GameBenchmark.generate(b.size, b.seed++);
+	}
+
+	@Benchmark
+	public Game assignNumbers(Board b){
+		b.game.assignNumbers();
+		return b.game;
+	}
+
+	//Opens every safe tile in reading order, which mixes flood fills with single tiles
+	@Benchmark
+	@OperationsPerInvocation(FreshBoards.BATCH)
+	public void openAllSafe(FreshBoards b, Blackhole bh){
+		for(Game game : b.games){
+			for(int r=0; r<game.height; r++){
+				for(int c=0; c<game.width; c++){
+					Game.Location loc = Game.Location.of(r, c);
+					if(game.number(loc)!=Game.MINE){
+						game.open(loc);
+					}
+				}
+			}
+			bh.consume(game);
+		}
+	}
+}
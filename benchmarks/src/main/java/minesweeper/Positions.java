@@ -0,0 +1,106 @@
+package minesweeper;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+//Fixed positions for the benchmarks, made by opening seeded games partway through
+public final class Positions{
+	public enum Difficulty{
+		BEGINNER(9, 9, 10),
+		INTERMEDIATE(16, 16, 40),
+		EXPERT(16, 30, 99);
+
+		public final int height, width, mines;
+		Difficulty(int height, int width, int mines){
+			this.height = height;
+			this.width = width;
+			this.mines = mines;
+		}
+	}
+
+	//How much of the safe area gets opened before the position is taken
+	private static final double PROGRESS = 0.4;
+
+	private Positions(){}
+
+	public static Game newGame(Difficulty d, long seed){
+		StrategyTest game = new StrategyTest(d.height, d.width, d.mines);
+		game.seed = new Random(seed).nextLong();
+		return game;
+	}
+
+	//The first `count` seeded games with PROGRESS of their safe tiles open
+	//Tiles get opened at random next to what's already open by looking at the hidden board, not by any strategy,
+	//so the positions stay the same whatever changes in the solvers and scores can be compared across commits
+	public static List<Game> midGame(Difficulty d, int count){
+		final int safe = d.height*d.width-d.mines;
+		List<Game> positions = new ArrayList<>();
+		for(long seed=0; positions.size()<count; seed++){
+			Game game = Positions.newGame(d, seed);
+			Random random = new Random(seed);
+			game.open(Game.Location.of(d.height/2, d.width/2));
+			while(game.getState()==Game.State.ACTIVE && Positions.opened(game)<safe*PROGRESS){
+				List<Game.Location> frontier = Positions.frontier(game);
+				game.open(frontier.get(random.nextInt(frontier.size())));
+			}
+			//Mines with every safe tile around them open are flagged, anything playing would know about those
+			for(int r=0; r<d.height; r++){
+				for(int c=0; c<d.width; c++){
+					Game.Location loc = Game.Location.of(r, c);
+					if(game.number(loc)==Game.MINE && Positions.surrounded(game, loc)){
+						game.flag(loc);
+					}
+				}
+			}
+			if(game.getState()==Game.State.ACTIVE){
+				positions.add(game);
+			}
+		}
+		return positions;
+	}
+	//Safe tiles that aren't open yet but border one that is, or all of them if mines cut the open ones off from the rest
+	private static List<Game.Location> frontier(Game game){
+		List<Game.Location> frontier = new ArrayList<>();
+		List<Game.Location> rest = new ArrayList<>();
+		for(int r=0; r<game.height; r++){
+			for(int c=0; c<game.width; c++){
+				Game.Location loc = Game.Location.of(r, c);
+				if(game.board[r][c]!=Game.UNKNOWN || game.number(loc)==Game.MINE){
+					continue;
+				}
+				rest.add(loc);
+				for(Game.Location n : game.neighbors(loc)){
+					if(game.board[n.row][n.col]!=Game.UNKNOWN && game.board[n.row][n.col]!=Game.MINE){
+						frontier.add(loc);
+						break;
+					}
+				}
+			}
+		}
+		return frontier.isEmpty() ? rest : frontier;
+	}
+	private static boolean surrounded(Game game, Game.Location mine){
+		boolean any = false;
+		for(Game.Location n : game.neighbors(mine)){
+			if(game.number(n)!=Game.MINE){
+				if(game.board[n.row][n.col]==Game.UNKNOWN){
+					return false;
+				}
+				any = true;
+			}
+		}
+		return any;
+	}
+	private static int opened(Game game){
+		int count = 0;
+		for(int[] row : game.board){
+			for(int v : row){
+				if(v!=Game.UNKNOWN && v!=Game.MINE){
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+}
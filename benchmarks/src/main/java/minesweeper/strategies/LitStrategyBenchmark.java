@@ -0,0 +1,123 @@
+package minesweeper.strategies;
+
+import minesweeper.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+//Times each phase of LitStrategy on its own, averaged over a fixed set of positions
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LitStrategyBenchmark{
+	private static final int POSITIONS = 8;
+
+	@Param({"BEGINNER", "INTERMEDIATE", "EXPERT"})
+	public String difficulty;
+
+	private LitStrategy[] agents;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		List<Game> games = Positions.midGame(Positions.Difficulty.valueOf(this.difficulty), POSITIONS);
+		this.agents = new LitStrategy[games.size()];
+		for(int i=0; i<this.agents.length; i++){
+			LitStrategy agent = (LitStrategy)LitStrategy.newAgent(games.get(i));
+			//Fill in everything the later phases read
+			agent.generateSubsets();
+			agent.calculateMineProbabilities();
+			agent.calculateNumberProbabilities();
+			LitStrategyBenchmark.discardMoves(agent);
+			this.agents[i] = agent;
+		}
+	}
+
+	//The phases only store the moves they find, so throw them away to keep every invocation the same
+	private static void discardMoves(LitStrategy agent){
+		while(agent.getStoredMove()!=null){}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void singlePointSearch(){
+		for(LitStrategy agent : this.agents){
+			agent.singlePointSearch();
+			LitStrategyBenchmark.discardMoves(agent);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void pairwiseSearchNeighbors(){
+		for(LitStrategy agent : this.agents){
+			//Otherwise every invocation after the first would only look at what changed since, which is nothing
+			agent.pair_versions[0] = 0;
+			agent.pairwiseSearch(agent::neighbors, 0);
+			LitStrategyBenchmark.discardMoves(agent);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void pairwiseSearchSecondNeighbors(){
+		for(LitStrategy agent : this.agents){
+			//Otherwise every invocation after the first would only look at what changed since, which is nothing
+			agent.pair_versions[1] = 0;
+			agent.pairwiseSearch(agent::second_neighbors, 1);
+			LitStrategyBenchmark.discardMoves(agent);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void linearSearch(){
+		for(LitStrategy agent : this.agents){
+			agent.linearSearch();
+			LitStrategyBenchmark.discardMoves(agent);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void generateSubsets(Blackhole bh){
+		for(LitStrategy agent : this.agents){
+			//Without the cached subsets every one of them has to be solved again
+			agent.subset_cache.clear();
+			agent.generateSubsets();
+			bh.consume(agent.subsets);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void calculateMineProbabilities(Blackhole bh){
+		for(LitStrategy agent : this.agents){
+			agent.calculateMineProbabilities();
+			bh.consume(agent.mine_probabilities);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void calculateNumberProbabilities(Blackhole bh){
+		for(LitStrategy agent : this.agents){
+			agent.calculateNumberProbabilities();
+			bh.consume(agent.number_probabilities);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public void probabilityBestGuess(){
+		for(LitStrategy agent : this.agents){
+			//Otherwise every testProgress after the first invocation would be a cache hit
+			agent.progress_cache.clear();
+			agent.probabilityBestGuess();
+			LitStrategyBenchmark.discardMoves(agent);
+		}
+	}
+}
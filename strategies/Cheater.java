@@ -16,43 +16,34 @@ public class Cheater implements Agent{
 		return new Cheater(game);
 	}
 	private void populateSafe(){
-		Field tile_number_field = null;
-		Field tile_open_field = null;
+		byte[] numbers = null;
+		byte[] status = null;
+		byte open = 0;
 		Class game_class = Game.class;
-		for(Class c : game_class.getDeclaredClasses()){
-			if(c.getName().equals(game_class.getName() + "$Tile")){
-				try{
-					tile_number_field = c.getDeclaredField("number");
-					tile_open_field = c.getDeclaredField("open");
-					break;
-				}catch (NoSuchFieldException e){}
-			}
-		}
-
-		Field game_board_field = null;
-		try{
-			game_board_field = game_class.getDeclaredField("full_board");
-		}catch (NoSuchFieldException e){}
-		game_board_field.setAccessible(true);
-		Object[][] board = null;
 		try{
-			board = (Object[][])(game_board_field.get(this.game));
-		}catch (IllegalAccessException e){}
+			Field numbers_field = game_class.getDeclaredField("numbers");
+			Field status_field = game_class.getDeclaredField("status");
+			numbers_field.setAccessible(true);
+			status_field.setAccessible(true);
+			numbers = (byte[])(numbers_field.get(this.game));
+			status = (byte[])(status_field.get(this.game));
+			Field open_field = game_class.getDeclaredField("OPEN");
+			open_field.setAccessible(true);
+			open = open_field.getByte(null);
+		}catch (NoSuchFieldException | IllegalAccessException e){}
 
-		for(int i=board.length-1; i>=0; i--){
-			for(int j=board[i].length-1; j>=0; j--){
-				Object t = board[i][j];
-				try{
-					if((boolean)tile_open_field.get(t) == false && (int)tile_number_field.get(t) != Game.MINE){
-						this.safe.push(new Game.Location(i,j));
-					}
-				}catch (IllegalAccessException e){}
+		for(int i=this.game.height-1; i>=0; i--){
+			for(int j=this.game.width-1; j>=0; j--){
+				int idx = i*this.game.width+j;
+				if((status[idx] & open) == 0 && numbers[idx] != Game.MINE){
+					this.safe.push(Game.Location.of(i,j));
+				}
 			}
 		}
 	}
 	public Agent.Action getMove(){
 		if(this.game.getState().compareTo(Game.State.READY)<0){
-			return new Agent.Action(Agent.Action.Type.OPEN, new Game.Location(0,0));
+			return new Agent.Action(Agent.Action.Type.OPEN, Game.Location.of(0,0));
 		}
 		if(this.safe.empty()){
 			this.populateSafe();
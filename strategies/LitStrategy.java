@@ -6,6 +6,17 @@ import java.util.function.*;
 import java.util.stream.Collectors;
 import java.math.BigInteger;
 import java.math.BigDecimal;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class LitStrategy implements Agent{
 	private final Game game;
@@ -14,11 +25,15 @@ public class LitStrategy implements Agent{
 	private Runnable[] guess_steps;
 	private LitStrategy(Game game){
 		this.game = game;
+		//The most tiles that can ever be chosen from is the whole board
+		//Rows from COMB_TABLE_SIZE on are never kept in the table
+		LitStrategy.reserveComb(Math.min(game.height*game.width, COMB_TABLE_SIZE-1));
 		this.search_steps = new Runnable[]{
 			this::firstMove,
-			this::singlePointSearch,
-			() -> this.pairwiseSearch(this::neighbors),
-			() -> this.pairwiseSearch(this::second_neighbors),
+			this::changedSinglePointSearch,
+			() -> this.pairwiseSearch(this::neighbors, 0),
+			() -> this.pairwiseSearch(this::second_neighbors, 1),
+			this::linearSearch,
 			this::generateSubsets,
 			this::calculateMineProbabilities,
 			this::probabilitySafeMoves,
@@ -30,11 +45,149 @@ public class LitStrategy implements Agent{
 			this::randomProbabilityGuess,
 			this::randomCornerGuess,
 		};
+		if(PROFILE){
+			this.search_steps = this.profiled(new String[]{
+				"firstMove",
+				"singlePointSearch",
+				"pairwiseSearch neighbors",
+				"pairwiseSearch second neighbors",
+				"linearSearch",
+				"generateSubsets",
+				"calculateMineProbabilities",
+				"probabilitySafeMoves",
+			}, this.search_steps);
+			this.guess_steps = this.profiled(new String[]{
+				"calculateNumberProbabilities",
+				"takeForcedGuesses",
+				"probabilityBestGuess",
+				"randomProbabilityGuess",
+				"randomCornerGuess",
+			}, this.guess_steps);
+		}
 	}
 	public static Agent newAgent(Game game){
 		return new LitStrategy(game);
 	}
 
+	//Opt-in counters for where the time goes, turned on with -Dminesweeper.profile=true or StrategyTest's -profile
+	//They are shared by every agent so they add up over all the games played in the JVM
+	private static final boolean PROFILE = Boolean.getBoolean("minesweeper.profile");
+	private static class Profile{
+		//Each step has how many times it ran, how many of those found moves, how many moves, and how many nanoseconds
+		private static final Map<String, LongAdder[]> steps = new LinkedHashMap<>();
+		private static final LongAdder search_nodes = new LongAdder();
+		private static final LongAdder assignments = new LongAdder();
+		private static final LongAdder disjoint_splits = new LongAdder();
+		private static final LongAdder subset_cache_hits = new LongAdder();
+		private static final LongAdder subset_cache_misses = new LongAdder();
+		//Counted as finding a move whenever the tested number would let something get opened
+		private static final LongAdder[] test_progress = Profile.newStats();
+		private static final LongAdder progress_cache_hits = new LongAdder();
+		private static LongAdder[] newStats(){
+			return new LongAdder[]{new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+		}
+		private static LongAdder[] step(String name){
+			synchronized(steps){
+				return steps.computeIfAbsent(name, (String k)->Profile.newStats());
+			}
+		}
+		private static void record(LongAdder[] stats, int moves, long nanos){
+			stats[0].increment();
+			if(moves>0){
+				stats[1].increment();
+				stats[2].add(moves);
+			}
+			stats[3].add(nanos);
+		}
+	}
+	private Runnable[] profiled(String[] names, Runnable[] steps){
+		Runnable[] wrapped = new Runnable[steps.length];
+		for(int i=0; i<steps.length; i++){
+			final Runnable step = steps[i];
+			final LongAdder[] stats = Profile.step(names[i]);
+			wrapped[i] = () -> {
+				int before = this.moves.size();
+				long start = System.nanoTime();
+				step.run();
+				Profile.record(stats, this.moves.size()-before, System.nanoTime()-start);
+			};
+		}
+		return wrapped;
+	}
+	//Optional limit on how much work goes into one move, past it the subsets are given up on and the probabilities are only estimated
+	//Set with -Dminesweeper.timeBudget in milliseconds or -Dminesweeper.nodeBudget in search nodes, or StrategyTest's -budget
+	protected static final long TIME_BUDGET = Long.getLong("minesweeper.timeBudget", 0);
+	protected static final long NODE_BUDGET = Long.getLong("minesweeper.nodeBudget", 0);
+	private static final boolean BUDGETED = TIME_BUDGET>0 || NODE_BUDGET>0;
+	private static final LongAdder budget_fallbacks = new LongAdder();
+	private final AtomicLong budget_nodes = new AtomicLong();
+	private volatile long budget_deadline;
+	//Set when the last subsets couldn't be solved in time
+	private boolean approximate = false;
+	private static class BudgetExceeded extends RuntimeException{
+		private static final long serialVersionUID = 1L;
+		private BudgetExceeded(){
+			super("Move budget exceeded", null, false, false);
+		}
+	}
+	private void startBudget(){
+		if(BUDGETED){
+			this.budget_nodes.set(0);
+			this.budget_deadline = System.nanoTime()+TIME_BUDGET*1000000;
+		}
+	}
+	private void spendBudget(){
+		if(!BUDGETED){
+			return;
+		}
+		long nodes = this.budget_nodes.incrementAndGet();
+		if(NODE_BUDGET>0 && nodes>NODE_BUDGET){
+			throw new BudgetExceeded();
+		}
+		//Checking the clock every node would cost more than the nodes
+		if(TIME_BUDGET>0 && (nodes&0xff)==0 && System.nanoTime()-this.budget_deadline>0){
+			throw new BudgetExceeded();
+		}
+	}
+	//How many moves, over every agent, had to fall back to estimates
+	public static long budgetFallbacks(){
+		return LitStrategy.budget_fallbacks.sum();
+	}
+
+	//StrategyTest prints this at the end when it's run with -profile or -budget
+	public static String profileReport(){
+		String fallbacks = String.format("Budget exceeded and fell back to estimates on %d moves", LitStrategy.budgetFallbacks());
+		if(!PROFILE){
+			return BUDGETED ? fallbacks : null;
+		}
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-40s %12s %12s %12s %12s\n", "Step", "calls", "found moves", "moves", "seconds"));
+		Map<String, LongAdder[]> rows;
+		synchronized(Profile.steps){
+			rows = new LinkedHashMap<>(Profile.steps);
+		}
+		rows.put("testProgress (in probabilityBestGuess)", Profile.test_progress);
+		for(Map.Entry<String, LongAdder[]> e : rows.entrySet()){
+			LongAdder[] stats = e.getValue();
+			report.append(String.format("%-40s %12d %12d %12d %12.4f\n",
+				e.getKey(), stats[0].sum(), stats[1].sum(), stats[2].sum(), stats[3].sum()/Math.pow(10,9)
+			));
+		}
+		report.append(String.format("generateCombinations: %d search nodes, %d assignments, %d disjoint splits",
+			Profile.search_nodes.sum(), Profile.assignments.sum(), Profile.disjoint_splits.sum()
+		));
+		report.append(String.format("\ngenerateSubsets: %d cached subsets reused, %d solved",
+			Profile.subset_cache_hits.sum(), Profile.subset_cache_misses.sum()
+		));
+		report.append(String.format("\nprobabilityBestGuess: %d cached testProgress results reused",
+			Profile.progress_cache_hits.sum()
+		));
+		if(BUDGETED){
+			report.append("\n").append(fallbacks);
+		}
+		return report.toString();
+	}
+
 	protected Agent.Action getStoredMove(){
 		while(!this.moves.empty()){
 			Agent.Action move = this.moves.pop();
@@ -45,6 +198,7 @@ public class LitStrategy implements Agent{
 		return null;
 	}
 	public Agent.Action getMove(){
+		this.startBudget();
 		for(Runnable[] steps : new Runnable[][]{this.search_steps, this.guess_steps}){
 			for(Runnable step : steps){
 				Agent.Action res = this.getStoredMove();
@@ -57,6 +211,25 @@ public class LitStrategy implements Agent{
 		return this.getStoredMove();
 	}
 
+	public List<Agent.Action> getMoves(){
+		//Everything still stored was worked out from the same board, so it can all be made at once
+		List<Agent.Action> batch = new ArrayList<>();
+		Agent.Action first = this.getMove();
+		batch.add(first);
+		if(first==null){
+			return batch;
+		}
+		Set<Game.Location> included = new HashSet<>();
+		included.add(first.location);
+		for(Agent.Action move = this.getStoredMove(); move!=null; move = this.getStoredMove()){
+			//The same tile can be found by several steps, and flagging it twice would undo the flag
+			if(included.add(move.location)){
+				batch.add(move);
+			}
+		}
+		return batch;
+	}
+
 	protected void flag(Game.Location loc){
 		this.moves.push(new Agent.Action(Agent.Action.Type.FLAG, loc));
 	}
@@ -68,14 +241,15 @@ public class LitStrategy implements Agent{
 	private boolean in_bounds(Game.Location pos){
 		return pos.row>=0 && pos.col>=0 && pos.row<this.game.height && pos.col<this.game.width;
 	}
-	private final HashMap<Game.Location, Game.Location[]> neighbor_cache = new HashMap<>();
-	private Game.Location[] neighbors(Game.Location pos){
+	//These get filled in from the threads that search subsets too
+	private final Map<Game.Location, Game.Location[]> neighbor_cache = new ConcurrentHashMap<>();
+	protected Game.Location[] neighbors(Game.Location pos){
 		Game.Location[] cached = neighbor_cache.get(pos);
 		if(cached==null){
 			List<Game.Location> ans = new ArrayList<>();
 			for(int r=-1; r<=1; r++){
 				for(int c=-1; c<=1; c++){
-					Game.Location n = new Game.Location(pos.row+r, pos.col+c);
+					Game.Location n = Game.Location.of(pos.row+r, pos.col+c);
 					if((r|c)!=0 && this.in_bounds(n)){
 						ans.add(n);
 					}
@@ -86,8 +260,8 @@ public class LitStrategy implements Agent{
 		}
 		return cached;
 	}
-	private final HashMap<Game.Location, Game.Location[]> second_neighbor_cache = new HashMap<>();
-	private Game.Location[] second_neighbors(Game.Location pos){
+	private final Map<Game.Location, Game.Location[]> second_neighbor_cache = new ConcurrentHashMap<>();
+	protected Game.Location[] second_neighbors(Game.Location pos){
 		//All tiles not bordering pos that share multiple neighbors with it
 		/*
 		.xxx.
@@ -103,7 +277,7 @@ public class LitStrategy implements Agent{
 			for(int m=0; m<=1; m++){
 				for(int d=-1; d<=1; d++){
 					for(int r=0; r<=1; r++){
-						Game.Location n = new Game.Location(pos.row+((m*2-1)*2*r+d*(1-r)), pos.col+((m*2-1)*2*(1-r)+d*r));
+						Game.Location n = Game.Location.of(pos.row+((m*2-1)*2*r+d*(1-r)), pos.col+((m*2-1)*2*(1-r)+d*r));
 						if(this.in_bounds(n)){
 							ans.add(n);
 						}
@@ -116,146 +290,242 @@ public class LitStrategy implements Agent{
 		return cached;
 	}
 
+	//Measured first moves for the board sizes that have been run through OpeningBook, read once when the class loads
+	//It's looked for in the working directory like the images, and anything not in it uses the defaults in firstMove
+	private static final OpeningBook OPENINGS = LitStrategy.loadOpenings(System.getProperty("minesweeper.openingBook", OpeningBook.DEFAULT_FILE));
+	private static OpeningBook loadOpenings(String filename){
+		if(filename.isEmpty()){
+			//Set to nothing to turn the book off
+			return new OpeningBook();
+		}
+		try{
+			return OpeningBook.load(filename);
+		}
+		catch(IOException | ParseException e){
+			System.err.printf("Not using the opening book: %s\n", e.getMessage());
+			return new OpeningBook();
+		}
+	}
+
 	protected void firstMove(){
 		if(this.game.getState()==Game.State.BEFORE){
-			if(this.game.zero_start){
+			Game.Location opening = OPENINGS.get(this.game.height, this.game.width, this.game.mines, this.game.zero_start);
+			if(opening!=null){
+				this.open(opening);
+			}
+			else if(this.game.zero_start){
 				//Determined experimentally
-				Game.Location pos = new Game.Location(2,3);
-				this.open(new Game.Location(
+				Game.Location pos = Game.Location.of(2,3);
+				this.open(Game.Location.of(
 					Math.max(0,Math.min(this.game.height-1, pos.row)),
 					Math.max(0,Math.min(this.game.width-1, pos.col))
 				));
 			}
 			else{
-				this.open(new Game.Location(0,0));
+				this.open(Game.Location.of(0,0));
 			}
 		}
 	}
 
 	protected void singlePointSearch(){
 		//Look for obvious moves where all/none of a tile's neighbors are mines
-		final int[][] board = this.game.board;
 		for(int r=0; r<this.game.height; r++){
 			for(int c=0; c<this.game.width; c++){
-				if(board[r][c]==Game.UNKNOWN || board[r][c]==Game.MINE){
-					continue;
+				this.checkSinglePoint(r,c);
+			}
+		}
+	}
+	private int searched_version = 0;
+	protected void changedSinglePointSearch(){
+		//Only tiles next to something that changed since the last search can have new obvious moves
+		//Any moves found last time have all been made already, which is also a change
+		final Set<Game.Location> checked = new HashSet<>();
+		this.game.forEachChangedSince(this.searched_version, (Game.Location loc) -> {
+			if(checked.add(loc)){
+				this.checkSinglePoint(loc.row, loc.col);
+			}
+			for(Game.Location n : this.neighbors(loc)){
+				if(checked.add(n)){
+					this.checkSinglePoint(n.row, n.col);
 				}
-				Game.Location pos = new Game.Location(r,c);
-				int mines = 0;
-				int unknown = 0;
-				for(Game.Location loc : this.neighbors(pos)){
-					int val = board[loc.row][loc.col];
-					if(val==Game.MINE){
-						mines++;
-					}
-					else if(val==Game.UNKNOWN){
-						unknown++;
+			}
+		});
+		this.searched_version = this.game.getVersion();
+	}
+	//Deduction tables for the local searches, built once when the class loads
+	//PAIR_SHARED[pairIndex(dr,dc)] has bit d set when the neighbor in direction d is also a neighbor of the tile dr,dc away
+	//What's left for each position is its window code, so a pair of numbers comes down to a few bit counts
+	private static final int PAIR_REACH = 2;
+	private static final int[] PAIR_SHARED = new int[(2*PAIR_REACH+1)*(2*PAIR_REACH+1)];
+	static{
+		for(int dr=-PAIR_REACH; dr<=PAIR_REACH; dr++){
+			for(int dc=-PAIR_REACH; dc<=PAIR_REACH; dc++){
+				for(int d=0; d<Game.NEIGHBORS; d++){
+					int distance = Math.max(Math.abs(Game.neighborRow(d)-dr), Math.abs(Game.neighborCol(d)-dc));
+					if(distance==1){
+						PAIR_SHARED[LitStrategy.pairIndex(dr,dc)] |= 1<<d;
 					}
 				}
-				if(unknown==0){
-					continue;
-				}
-				int unknown_mines = board[r][c]-mines;
-				if(unknown_mines==0){
-					for(Game.Location loc : this.neighbors(pos)){
-						if(board[loc.row][loc.col]==Game.UNKNOWN){
-							this.open(loc);
-						}
+			}
+		}
+	}
+	private static int pairIndex(int dr, int dc){
+		return (dr+PAIR_REACH)*(2*PAIR_REACH+1)+dc+PAIR_REACH;
+	}
+	//What a number's 3x3 window settles by itself, indexed by its window code from localWindow
+	//The low 8 bits are the directions that are safe in every way of placing its mines and the next 8 are the ones that are mines in every way
+	//It's made by trying every placement, windows that can't be filled have nothing in them
+	private static final int[] WINDOW_DEDUCTIONS = new int[(Game.NEIGHBORS+1)<<8];
+	static{
+		for(int unknown=0; unknown<(1<<Game.NEIGHBORS); unknown++){
+			for(int mines=0; mines<=Game.NEIGHBORS; mines++){
+				int always = unknown;
+				int ever = 0;
+				boolean fits = false;
+				//Every subset of the unknown directions, including the empty one
+				for(int placed=unknown; ; placed=(placed-1)&unknown){
+					if(Integer.bitCount(placed)==mines){
+						always &= placed;
+						ever |= placed;
+						fits = true;
 					}
-				}
-				if(unknown_mines==unknown){
-					for(Game.Location loc : this.neighbors(pos)){
-						if(board[loc.row][loc.col]==Game.UNKNOWN){
-							this.flag(loc);
-						}
+					if(placed==0){
+						break;
 					}
 				}
+				if(fits){
+					WINDOW_DEDUCTIONS[(mines<<8) | unknown] = (always<<8) | (unknown & ~ever);
+				}
+			}
+		}
+	}
+	//The low 8 bits have bit d set for each unknown neighbor in direction d, the rest is how many of those are mines
+	private int localWindow(int r, int c){
+		final int[][] board = this.game.board;
+		final int mask = this.game.neighborMask(r,c);
+		int mines = board[r][c];
+		int unknown = 0;
+		for(int m=mask; m!=0; m&=m-1){
+			int d = Integer.numberOfTrailingZeros(m);
+			int val = board[r+Game.neighborRow(d)][c+Game.neighborCol(d)];
+			if(val==Game.MINE){
+				mines--;
+			}
+			else if(val==Game.UNKNOWN){
+				unknown |= 1<<d;
 			}
 		}
+		return (mines<<8) | unknown;
+	}
+	private void checkSinglePoint(int r, int c){
+		final int[][] board = this.game.board;
+		if(board[r][c]==Game.UNKNOWN || board[r][c]==Game.MINE){
+			return;
+		}
+		int window = this.localWindow(r,c);
+		if((window & 0xff)==0 || window<0 || window>=WINDOW_DEDUCTIONS.length){
+			//Nothing to find, or more flags around it than its number which the table doesn't cover
+			return;
+		}
+		int deduction = WINDOW_DEDUCTIONS[window];
+		this.processDirections(Agent.Action.Type.OPEN, r, c, deduction & 0xff);
+		this.processDirections(Agent.Action.Type.FLAG, r, c, deduction>>8);
 	}
 
-	protected void pairwiseSearch(Function<Game.Location, Game.Location[]> neighborhood){
+	//The version each pairwise search last ran at, 0 for neighbors and 1 for second neighbors
+	//Pairs where neither window has changed since then were checked that time, and anything they found has been made already
+	protected final int[] pair_versions = new int[2];
+	protected void pairwiseSearch(Function<Game.Location, Game.Location[]> neighborhood, int search){
 		final int[][] board = this.game.board;
-		//Look for moves where all/none of a tile's mines are bordering another tile
-		for(int r1=0; r1<this.game.height; r1++){
-			for(int c1=0; c1<this.game.width; c1++){
-				if(board[r1][c1]==Game.UNKNOWN || board[r1][c1]==Game.MINE){
-					continue;
-				}
-				Game.Location loc1 = new Game.Location(r1,c1);
-				for(Game.Location loc2 : neighborhood.apply(loc1)){
-					if(board[loc2.row][loc2.col]==Game.UNKNOWN || board[loc2.row][loc2.col]==Game.MINE){
-						continue;
+		final int width = this.game.width;
+		//Tiles whose window changed, and every tile close enough to be in a pair with one of them
+		final boolean[] dirty = new boolean[this.game.height*width];
+		final boolean[] near = new boolean[this.game.height*width];
+		final int[] nearby = new int[this.game.height*width];
+		final int[] count = {0};
+		this.game.forEachChangedSince(this.pair_versions[search], (Game.Location changed) -> {
+			for(int r=Math.max(0, changed.row-1-PAIR_REACH); r<=Math.min(this.game.height-1, changed.row+1+PAIR_REACH); r++){
+				for(int c=Math.max(0, changed.col-1-PAIR_REACH); c<=Math.min(width-1, changed.col+1+PAIR_REACH); c++){
+					if(Math.abs(r-changed.row)<=1 && Math.abs(c-changed.col)<=1){
+						dirty[r*width+c] = true;
 					}
-					if(!(loc2.row>loc1.row) && !(loc1.row==loc2.row && loc2.col>loc1.col)){
-						//Avoid checking the same pair twice
-						continue;
+					if(!near[r*width+c]){
+						near[r*width+c] = true;
+						nearby[count[0]++] = r*width+c;
 					}
-					this.checkPair(loc1, loc2);
 				}
 			}
+		});
+		this.pair_versions[search] = this.game.getVersion();
+		//Same order as going over the whole board
+		Arrays.sort(nearby, 0, count[0]);
+		//Nothing gets changed on the board during the search so every number's window only needs working out once
+		final int[] windows = new int[this.game.height*width];
+		for(int i=0; i<count[0]; i++){
+			int r = nearby[i]/width;
+			int c = nearby[i]%width;
+			if(board[r][c]!=Game.UNKNOWN && board[r][c]!=Game.MINE){
+				windows[nearby[i]] = this.localWindow(r,c);
+			}
 		}
-	}
-	private void checkPair(Game.Location loc1, Game.Location loc2){
-		final int[][] board = this.game.board;
-		int shared = 0;
-		int mines1 = board[loc1.row][loc1.col];
-		int unique1 = 0;
-		for(Game.Location n1 : this.neighbors(loc1)){
-			switch(board[n1.row][n1.col]){
-			case Game.MINE:
-				mines1--;
-				break;
-			case Game.UNKNOWN:
-				unique1++;
-				for(Game.Location n2 : this.neighbors(loc2)){
-					if(n1.equals(n2)){
-						shared++;
-						unique1--;
-						break;
-					}
+		//Look for moves where all/none of a tile's mines are bordering another tile
+		for(int i=0; i<count[0]; i++){
+			int idx1 = nearby[i];
+			int r1 = idx1/width;
+			int c1 = idx1%width;
+			if(board[r1][c1]==Game.UNKNOWN || board[r1][c1]==Game.MINE || (windows[idx1] & 0xff)==0){
+				continue;
+			}
+			Game.Location loc1 = Game.Location.of(r1,c1);
+			for(Game.Location loc2 : neighborhood.apply(loc1)){
+				if(board[loc2.row][loc2.col]==Game.UNKNOWN || board[loc2.row][loc2.col]==Game.MINE){
+					continue;
+				}
+				if(!(loc2.row>loc1.row) && !(loc1.row==loc2.row && loc2.col>loc1.col)){
+					//Avoid checking the same pair twice
+					continue;
+				}
+				int idx2 = loc2.row*width+loc2.col;
+				if(!dirty[idx1] && !dirty[idx2]){
+					continue;
 				}
+				this.checkPair(loc1, loc2, windows[idx1], windows[idx2]);
 			}
 		}
+	}
+	private void checkPair(Game.Location loc1, Game.Location loc2, int window1, int window2){
+		int shared_dirs1 = PAIR_SHARED[LitStrategy.pairIndex(loc2.row-loc1.row, loc2.col-loc1.col)];
+		int shared = Integer.bitCount(window1 & shared_dirs1);
 		if(shared==0){
 			return;
 		}
-		int mines2 = board[loc2.row][loc2.col];
-		int unique2 = -1*shared;
-		for(Game.Location n2 : this.neighbors(loc2)){
-			switch(board[n2.row][n2.col]){
-			case Game.MINE:
-				mines2--;
-				break;
-			case Game.UNKNOWN:
-				unique2++;
-			}
-		}
+		int shared_dirs2 = PAIR_SHARED[LitStrategy.pairIndex(loc1.row-loc2.row, loc1.col-loc2.col)];
+		int unique_dirs1 = window1 & 0xff & ~shared_dirs1;
+		int unique_dirs2 = window2 & 0xff & ~shared_dirs2;
+		int mines1 = window1>>8;
+		int mines2 = window2>>8;
+		int unique1 = Integer.bitCount(unique_dirs1);
+		int unique2 = Integer.bitCount(unique_dirs2);
+
 		int min = Math.max(Math.max(mines1-unique1, mines2-unique2),0);
 		int max = Math.min(Math.min(mines1, mines2), shared);
 		if(min==mines1){
-			this.process_all_unique(Agent.Action.Type.OPEN, loc1, loc2);
+			this.processDirections(Agent.Action.Type.OPEN, loc1.row, loc1.col, unique_dirs1);
 		}
 		if(max+unique1==mines1){
-			this.process_all_unique(Agent.Action.Type.FLAG, loc1, loc2);
+			this.processDirections(Agent.Action.Type.FLAG, loc1.row, loc1.col, unique_dirs1);
 		}
 		if(min==mines2){
-			this.process_all_unique(Agent.Action.Type.OPEN, loc2, loc1);
+			this.processDirections(Agent.Action.Type.OPEN, loc2.row, loc2.col, unique_dirs2);
 		}
 		if(max+unique2==mines2){
-			this.process_all_unique(Agent.Action.Type.FLAG, loc2, loc1);
+			this.processDirections(Agent.Action.Type.FLAG, loc2.row, loc2.col, unique_dirs2);
 		}
 	}
-	private void process_all_unique(Agent.Action.Type a, Game.Location loc, Game.Location other){
-		outer: for(Game.Location target : this.neighbors(loc)){
-			if(this.game.board[target.row][target.col]!=Game.UNKNOWN){
-				continue;
-			}
-			for(Game.Location n2 : this.neighbors(other)){
-				if(n2.equals(target)){
-					continue outer;
-				}
-			}
+	private void processDirections(Agent.Action.Type a, int r, int c, int dirs){
+		for(int m=dirs; m!=0; m&=m-1){
+			int d = Integer.numberOfTrailingZeros(m);
+			Game.Location target = Game.Location.of(r+Game.neighborRow(d), c+Game.neighborCol(d));
 			if(a==Agent.Action.Type.OPEN){
 				this.open(target);
 			}
@@ -265,6 +535,147 @@ public class LitStrategy implements Agent{
 		}
 	}
 
+	//Row reduction over every number's constraint at once, which finds things that no pair of numbers shows by itself
+	//Each row says how many mines are in some tiles, and once reduced a row that can only add up 1 way settles its tiles
+	protected void linearSearch(){
+		final int[][] board = this.game.board;
+		Map<Game.Location, Integer> columns = new HashMap<>();
+		List<Game.Location> tiles = new ArrayList<>();
+		List<Game.Location> numbers = new ArrayList<>();
+		int unknown = 0;
+		for(int r=0; r<this.game.height; r++){
+			for(int c=0; c<this.game.width; c++){
+				if(board[r][c]==Game.UNKNOWN){
+					unknown++;
+				}
+				if(board[r][c]==Game.UNKNOWN || board[r][c]==Game.MINE){
+					continue;
+				}
+				Game.Location loc = Game.Location.of(r,c);
+				boolean any = false;
+				for(Game.Location n : this.neighbors(loc)){
+					if(board[n.row][n.col]==Game.UNKNOWN){
+						any = true;
+						if(!columns.containsKey(n)){
+							columns.put(n, tiles.size());
+							tiles.add(n);
+						}
+					}
+				}
+				if(any){
+					numbers.add(loc);
+				}
+			}
+		}
+		final int width = tiles.size();
+		if(width==0){
+			return;
+		}
+		//The last column is how many mines the row adds up to
+		List<long[]> rows = new ArrayList<>();
+		for(Game.Location loc : numbers){
+			long[] row = new long[width+1];
+			row[width] = board[loc.row][loc.col];
+			for(Game.Location n : this.neighbors(loc)){
+				if(board[n.row][n.col]==Game.MINE){
+					row[width]--;
+				}
+				else if(board[n.row][n.col]==Game.UNKNOWN){
+					row[columns.get(n)] = 1;
+				}
+			}
+			rows.add(row);
+		}
+		if(unknown==width){
+			//Every hidden tile is next to a number, so the mines left have to be in them
+			long[] row = new long[width+1];
+			Arrays.fill(row, 1);
+			row[width] = this.game.minecount;
+			rows.add(row);
+		}
+
+		long[][] matrix = rows.toArray(new long[0][]);
+		try{
+			int pivot = 0;
+			for(int col=0; col<width && pivot<matrix.length; col++){
+				int found = pivot;
+				while(found<matrix.length && matrix[found][col]==0){
+					found++;
+				}
+				if(found==matrix.length){
+					continue;
+				}
+				long[] swap = matrix[pivot];
+				matrix[pivot] = matrix[found];
+				matrix[found] = swap;
+				for(int r=0; r<matrix.length; r++){
+					if(r==pivot || matrix[r][col]==0){
+						continue;
+					}
+					long a = matrix[pivot][col];
+					long b = matrix[r][col];
+					for(int k=0; k<=width; k++){
+						matrix[r][k] = Math.subtractExact(Math.multiplyExact(matrix[r][k], a), Math.multiplyExact(matrix[pivot][k], b));
+					}
+					LitStrategy.reduceRow(matrix[r]);
+				}
+				pivot++;
+			}
+		}
+		catch(ArithmeticException e){
+			//The numbers got too big to be worth it, the subsets will find everything anyway
+			return;
+		}
+
+		//Every tile is 0 or 1, so a row that adds up to its smallest or biggest possible total only works one way
+		for(long[] row : matrix){
+			long min = 0;
+			long max = 0;
+			for(int k=0; k<width; k++){
+				if(row[k]<0){
+					min += row[k];
+				}
+				else{
+					max += row[k];
+				}
+			}
+			if(min==max || (row[width]!=min && row[width]!=max)){
+				continue;
+			}
+			boolean positive_mines = row[width]==max;
+			for(int k=0; k<width; k++){
+				if(row[k]==0){
+					continue;
+				}
+				if((row[k]>0)==positive_mines){
+					this.flag(tiles.get(k));
+				}
+				else{
+					this.open(tiles.get(k));
+				}
+			}
+		}
+	}
+	//Divides a row by what all its entries have in common
+	private static void reduceRow(long[] row){
+		long gcd = 0;
+		for(long x : row){
+			for(long y = Math.abs(x); y!=0;){
+				long t = gcd%y;
+				gcd = y;
+				y = t;
+			}
+			if(gcd==1){
+				return;
+			}
+		}
+		if(gcd>1){
+			for(int i=0; i<row.length; i++){
+				row[i] /= gcd;
+			}
+		}
+	}
+
 
 	protected class Subset{
 		public final Set<Game.Location> open_area;
@@ -289,179 +700,460 @@ public class LitStrategy implements Agent{
 		public List<Map<Game.Location, BigInteger>> mine_occurrences;
 		public List<Map<Game.Location, BigInteger[]>> number_occurrences;
 		public BigInteger[] minecount_occurrences;
+		//The same counts while the combinations are being generated, indexed by number of mines
+		//Tiles are numbered by their position in hidden_tiles and number_tiles
+		private Game.Location[] hidden_tiles;
+		private Game.Location[] number_tiles;
+		private Map<Game.Location, Integer> number_index;
+		private Counts[] mine_counts;
+		private Counts[] number_counts;
+		private Counts minecount_counts;
+		//Who neighbors who, for the search, with the open tiles numbered by their position in open_tiles
+		private Game.Location[] open_tiles;
+		private int[][] hidden_open;
+		private int[][] open_hidden;
+		//The same as bitsets over the hidden tiles, 64 to a word
+		private int words;
+		private long[][] open_hidden_bits;
+		private long[][] number_hidden_bits;
+		//Position of each number tile in hidden_tiles, or -1 for the ones outside the subset
+		private int[] number_hidden_id;
+		//Hidden tiles from most to least open neighbors, the order they get branched on
+		private int[] branch_order;
 		private void prepare_data_structures(){
 			final int[][] board = LitStrategy.this.game.board;
+			this.hidden_tiles = this.hidden_area.toArray(new Game.Location[0]);
+			this.number_index = new LinkedHashMap<>();
+			for(Game.Location loc : this.hidden_tiles){
+				this.number_index.putIfAbsent(loc, this.number_index.size());
+				for(Game.Location n : LitStrategy.this.neighbors(loc)){
+					if(board[n.row][n.col]==Game.UNKNOWN){
+						this.number_index.putIfAbsent(n, this.number_index.size());
+					}
+				}
+			}
+			this.number_tiles = this.number_index.keySet().toArray(new Game.Location[0]);
+			this.mine_counts = new Counts[this.max_mines+2];
+			this.number_counts = new Counts[this.max_mines+2];
+			for(int i=0; i<=this.max_mines+1; i++){
+				this.mine_counts[i] = new Counts(this.hidden_tiles.length);
+				this.number_counts[i] = new Counts(this.number_tiles.length*Game.MINE);
+			}
+			this.minecount_counts = new Counts(this.max_mines+1);
+
+			Map<Game.Location, Integer> hidden_index = new HashMap<>();
+			for(int i=0; i<this.hidden_tiles.length; i++){
+				hidden_index.put(this.hidden_tiles[i], i);
+			}
+			this.open_tiles = this.open_area.toArray(new Game.Location[0]);
+			Map<Game.Location, Integer> open_index = new HashMap<>();
+			for(int i=0; i<this.open_tiles.length; i++){
+				open_index.put(this.open_tiles[i], i);
+			}
+			this.hidden_open = new int[this.hidden_tiles.length][];
+			for(int i=0; i<this.hidden_tiles.length; i++){
+				this.hidden_open[i] = LitStrategy.localNeighbors(LitStrategy.this.neighbors(this.hidden_tiles[i]), open_index);
+			}
+			this.words = (this.hidden_tiles.length+63)>>>6;
+			this.open_hidden = new int[this.open_tiles.length][];
+			this.open_hidden_bits = new long[this.open_tiles.length][];
+			for(int i=0; i<this.open_tiles.length; i++){
+				this.open_hidden[i] = LitStrategy.localNeighbors(LitStrategy.this.neighbors(this.open_tiles[i]), hidden_index);
+				this.open_hidden_bits[i] = LitStrategy.bits(this.open_hidden[i], this.words);
+			}
+			this.number_hidden_bits = new long[this.number_tiles.length][];
+			this.number_hidden_id = new int[this.number_tiles.length];
+			for(int i=0; i<this.number_tiles.length; i++){
+				int[] hidden_neighbors = LitStrategy.localNeighbors(LitStrategy.this.neighbors(this.number_tiles[i]), hidden_index);
+				this.number_hidden_bits[i] = LitStrategy.bits(hidden_neighbors, this.words);
+				this.number_hidden_id[i] = hidden_index.getOrDefault(this.number_tiles[i], -1);
+			}
+			//Sort based on a "fail first heuristic" increases performance
+			//Most to least neighbors that are open in this subset works ok
+			Integer[] order = new Integer[this.hidden_tiles.length];
+			for(int i=0; i<order.length; i++){
+				order[i] = i;
+			}
+			Arrays.sort(order, (Integer a, Integer b)->this.hidden_open[b].length-this.hidden_open[a].length);
+			this.branch_order = new int[order.length];
+			for(int i=0; i<order.length; i++){
+				this.branch_order[i] = order[i];
+			}
+		}
+		//Turns the counts into the form the probability calculations use, once all the combinations are done
+		private void finish_data_structures(){
 			this.mine_occurrences = new ArrayList<>();
 			this.number_occurrences = new ArrayList<>();
-			this.minecount_occurrences = new BigInteger[this.max_mines+1];
-			Arrays.fill(this.minecount_occurrences, BigInteger.ZERO);
 			for(int i=0; i<=this.max_mines+1; i++){
 				Map<Game.Location, BigInteger> mine_occurrence = new HashMap<>();
+				for(int j=0; j<this.hidden_tiles.length; j++){
+					mine_occurrence.put(this.hidden_tiles[j], this.mine_counts[i].get(j));
+				}
 				Map<Game.Location, BigInteger[]> number_occurrence = new HashMap<>();
-				this.mine_occurrences.add(mine_occurrence);
-				this.number_occurrences.add(number_occurrence);
-				for(Game.Location loc : this.hidden_area){
-					mine_occurrence.put(loc, BigInteger.ZERO);
-					if(!number_occurrence.containsKey(loc)){
-						BigInteger[] numbers = new BigInteger[Game.MINE];
-						Arrays.fill(numbers, BigInteger.ZERO);
-						number_occurrence.put(loc, numbers);
-					}
-					for(Game.Location n : LitStrategy.this.neighbors(loc)){
-						if(board[n.row][n.col]==Game.UNKNOWN && !number_occurrence.containsKey(n)){
-							BigInteger[] numbers = new BigInteger[Game.MINE];
-							Arrays.fill(numbers, BigInteger.ZERO);
-							number_occurrence.put(n, numbers);
-						}
+				for(int j=0; j<this.number_tiles.length; j++){
+					BigInteger[] numbers = new BigInteger[Game.MINE];
+					for(int n=0; n<Game.MINE; n++){
+						numbers[n] = this.number_counts[i].get(j*Game.MINE+n);
 					}
+					number_occurrence.put(this.number_tiles[j], numbers);
 				}
+				this.mine_occurrences.add(mine_occurrence);
+				this.number_occurrences.add(number_occurrence);
 			}
-			
+			this.minecount_occurrences = new BigInteger[this.max_mines+1];
+			for(int i=0; i<this.minecount_occurrences.length; i++){
+				this.minecount_occurrences[i] = this.minecount_counts.get(i);
+			}
+			this.mine_counts = null;
+			this.number_counts = null;
+			this.minecount_counts = null;
+			this.hidden_open = null;
+			this.open_hidden = null;
+			this.open_hidden_bits = null;
+			this.number_hidden_bits = null;
+			this.number_hidden_id = null;
+			this.branch_order = null;
 		}
 
-		private class SearchState{
-			public final Set<Game.Location> candidates;
-			public final Set<Game.Location> selected;
-			public final Map<Game.Location, Integer> mines_remaining;
-			public final Map<Game.Location, Integer> empty_remaining;
-			public SearchState(Set<Game.Location> candidates, Set<Game.Location> selected, Map<Game.Location, Integer> mines_remaining, Map<Game.Location, Integer> empty_remaining){
-				this.candidates=candidates;
-				this.selected=selected;
-				this.mines_remaining=mines_remaining;
-				this.empty_remaining=empty_remaining;
-			}
-			public SearchState(SearchState other){
-				this.candidates=new HashSet<>(other.candidates);
-				this.selected=new HashSet<>(other.selected);
-				this.mines_remaining=new HashMap<>(other.mines_remaining);
-				this.empty_remaining=new HashMap<>(other.empty_remaining);
+		//One state for the whole search, every choice goes on the trail so backtracking just undoes it
+		private class Search{
+			//Bitsets of the hidden tiles that are still undecided and the ones that are mines
+			private final long[] candidate_bits = LitStrategy.bits(Subset.this.branch_order, Subset.this.words);
+			private final long[] selected_bits = new long[Subset.this.words];
+			private int candidates = Subset.this.hidden_tiles.length;
+			private int selected = 0;
+			//Per open tile, mines still needed around it and candidates still around it
+			private final int[] mines_remaining = new int[Subset.this.open_tiles.length];
+			private final int[] empty_remaining = new int[Subset.this.open_tiles.length];
+			//Kept up to date as tiles change so checking the whole state doesnt need to look at every tile
+			private int broken = 0;
+			private int unsatisfied = 0;
+			private final int[] mines_needed = new int[Game.MINE+1];
+
+			private final int[] trail = new int[Subset.this.hidden_tiles.length];
+			private int trail_size = 0;
+			//Open tiles that changed since they were last checked for forced moves
+			private final int[] queue = new int[Subset.this.open_tiles.length];
+			private final boolean[] queued = new boolean[Subset.this.open_tiles.length];
+			private int queue_size = 0;
+
+			//Where the combinations get counted, searches that are split off have their own until theyre merged back
+			//A split off search only makes its own once it has something to count, ones that just split again take their first branch's
+			private Counts[] mine_counts;
+			private Counts[] number_counts;
+			private Counts minecount_counts;
+			//How many levels of branches at the top are run as separate tasks
+			private final int fork_depth;
+
+			public Search(Map<Game.Location, Integer> mines_remaining){
+				for(int o=0; o<Subset.this.open_tiles.length; o++){
+					this.mines_remaining[o] = mines_remaining.get(Subset.this.open_tiles[o]);
+					this.empty_remaining[o] = Subset.this.open_hidden[o].length;
+					this.count(o, 1);
+					this.enqueue(o);
+				}
+				this.mine_counts = Subset.this.mine_counts;
+				this.number_counts = Subset.this.number_counts;
+				this.minecount_counts = Subset.this.minecount_counts;
+				this.fork_depth = LitStrategy.forkDepth(Subset.this.hidden_tiles.length);
+			}
+			//Copy of a search between steps, with nothing counted yet
+			private Search(Search other){
+				System.arraycopy(other.candidate_bits, 0, this.candidate_bits, 0, this.candidate_bits.length);
+				System.arraycopy(other.selected_bits, 0, this.selected_bits, 0, this.selected_bits.length);
+				this.candidates = other.candidates;
+				this.selected = other.selected;
+				System.arraycopy(other.mines_remaining, 0, this.mines_remaining, 0, this.mines_remaining.length);
+				System.arraycopy(other.empty_remaining, 0, this.empty_remaining, 0, this.empty_remaining.length);
+				this.broken = other.broken;
+				this.unsatisfied = other.unsatisfied;
+				System.arraycopy(other.mines_needed, 0, this.mines_needed, 0, this.mines_needed.length);
+				this.fork_depth = other.fork_depth;
+			}
+			private void ensureCounts(){
+				if(this.minecount_counts!=null){
+					return;
+				}
+				this.mine_counts = new Counts[Subset.this.max_mines+2];
+				this.number_counts = new Counts[Subset.this.max_mines+2];
+				for(int i=0; i<this.mine_counts.length; i++){
+					this.mine_counts[i] = new Counts(Subset.this.hidden_tiles.length);
+					this.number_counts[i] = new Counts(Subset.this.number_tiles.length*Game.MINE);
+				}
+				this.minecount_counts = new Counts(Subset.this.max_mines+1);
 			}
-			public boolean isComplete(){
-				for(Integer i : this.mines_remaining.values()){
-					if(i!=0){
-						return false;
-					}
+			private void merge(Search other){
+				if(other.minecount_counts==null){
+					return;
 				}
-				return true;
+				if(this.minecount_counts==null){
+					this.mine_counts = other.mine_counts;
+					this.number_counts = other.number_counts;
+					this.minecount_counts = other.minecount_counts;
+					return;
+				}
+				for(int i=0; i<this.mine_counts.length; i++){
+					this.mine_counts[i].add(other.mine_counts[i]);
+					this.number_counts[i].add(other.number_counts[i]);
+				}
+				this.minecount_counts.add(other.minecount_counts);
 			}
-			public boolean discard(Game.Location loc){
-				if(!this.candidates.remove(loc)){
-					return false;
+			private void count(int o, int sign){
+				int need = this.mines_remaining[o];
+				if(need<0 || this.empty_remaining[o]<need){
+					this.broken += sign;
 				}
-				for(Game.Location n : LitStrategy.this.neighbors(loc)){
-					empty_remaining.computeIfPresent(n, (Game.Location l, Integer x)->(x-1));
+				if(need!=0){
+					this.unsatisfied += sign;
+				}
+				if(need>0){
+					this.mines_needed[Math.min(need, Game.MINE)] += sign;
 				}
-				return true;
 			}
-			public boolean select(Game.Location loc){
-				if(!this.discard(loc)){
-					return false;
+			private void enqueue(int o){
+				if(!this.queued[o]){
+					this.queued[o] = true;
+					this.queue[this.queue_size++] = o;
 				}
-				this.selected.add(loc);
-				for(Game.Location n : LitStrategy.this.neighbors(loc)){
-					Integer res = mines_remaining.computeIfPresent(n, (Game.Location l, Integer x)->(x-1));
+			}
+			private boolean isCandidate(int h){
+				return (this.candidate_bits[h>>>6] & (1L<<h)) != 0;
+			}
+			private boolean isSelected(int h){
+				return (this.selected_bits[h>>>6] & (1L<<h)) != 0;
+			}
+			private void assign(int h, boolean mine_here){
+				if(PROFILE){
+					Profile.assignments.increment();
+				}
+				this.candidate_bits[h>>>6] &= ~(1L<<h);
+				this.trail[this.trail_size++] = h;
+				this.candidates--;
+				int mine = 0;
+				if(mine_here){
+					this.selected_bits[h>>>6] |= 1L<<h;
+					this.selected++;
+					mine = 1;
+				}
+				for(int o : Subset.this.hidden_open[h]){
+					this.count(o, -1);
+					this.mines_remaining[o] -= mine;
+					this.empty_remaining[o]--;
+					this.count(o, 1);
+					this.enqueue(o);
 				}
-				return true;
 			}
-			public boolean deadEnd(){
-				for(Game.Location loc : Subset.this.open_area){
-					int need = this.mines_remaining.get(loc);
-					int space = this.empty_remaining.get(loc);
-					if(need<0 || space<need || Subset.this.max_mines-this.selected.size()<need){
-						return true;
+			private void undo(int mark){
+				while(this.trail_size>mark){
+					int h = this.trail[--this.trail_size];
+					int mine = 0;
+					if(this.isSelected(h)){
+						this.selected_bits[h>>>6] &= ~(1L<<h);
+						this.selected--;
+						mine = 1;
 					}
-					if(need>0){
-						int count = 0;
-						for(Game.Location n : LitStrategy.this.neighbors(loc)){
-							if(this.candidates.contains(n)){
-								count++;
-							}
-						}
-						if(count<need){
-							return true;
-						}
+					for(int o : Subset.this.hidden_open[h]){
+						this.count(o, -1);
+						this.mines_remaining[o] += mine;
+						this.empty_remaining[o]++;
+						this.count(o, 1);
+					}
+					this.candidate_bits[h>>>6] |= 1L<<h;
+					this.candidates++;
+				}
+			}
+			public boolean deadEnd(){
+				if(this.broken>0){
+					return true;
+				}
+				for(int need=Game.MINE; need>0; need--){
+					if(this.mines_needed[need]>0){
+						return Subset.this.max_mines-this.selected<need;
 					}
 				}
 				return false;
 			}
+			//Make any trivially mandatory moves around the tiles that changed, false if it runs into a dead end
 			public boolean reduce(){
-				boolean changed = false;
-				for(Game.Location loc : Subset.this.open_area){
-					//Make any trivially mandatory moves
-					int empty = this.empty_remaining.get(loc);
-					int mines = this.mines_remaining.get(loc);
-					if(mines==0){
-						for(Game.Location n : LitStrategy.this.neighbors(loc)){
-							changed |= this.discard(n);
-						}
+				while(this.queue_size>0 && this.broken==0){
+					int o = this.queue[--this.queue_size];
+					this.queued[o] = false;
+					int mines = this.mines_remaining[o];
+					if(this.empty_remaining[o]==0 || (mines!=0 && mines!=this.empty_remaining[o])){
+						continue;
 					}
-					if(mines==empty){
-						for(Game.Location n : LitStrategy.this.neighbors(loc)){
-							changed |= this.select(n);
+					for(int h : Subset.this.open_hidden[o]){
+						if(this.isCandidate(h)){
+							this.assign(h, mines!=0);
 						}
 					}
 				}
-				return changed;
+				while(this.queue_size>0){
+					this.queued[this.queue[--this.queue_size]] = false;
+				}
+				return !this.deadEnd();
 			}
-			public boolean checkDisjoint(){
-				//If were small there's no need to split
-				if(this.candidates.size()<=3){
-					return false;
+			public void search(int order_start, int depth){
+				if(PROFILE){
+					Profile.search_nodes.increment();
 				}
-				Stack<Game.Location> stack = new Stack<>();
-				//Pick 1 candidate arbitrarily
-				for(Game.Location loc : this.candidates){
-					stack.push(loc);
-					break;
+				LitStrategy.this.spendBudget();
+				if(this.selected>Subset.this.max_mines){
+					return;
 				}
-				Set<Game.Location> candidates_found = new HashSet<>();
-				candidates_found.add(stack.peek());
-				Set<Game.Location> open_found = new HashSet<>();
-				while(!stack.empty()){
-					Game.Location loc = stack.pop();
-					if(this.candidates.contains(loc)){
-						for(Game.Location n : LitStrategy.this.neighbors(loc)){
-							if(Subset.this.open_area.contains(n) && open_found.add(n)){
-								stack.push(n);
+				//Process a complete valid combination
+				if(this.unsatisfied==0){
+					this.record();
+					return;
+				}
+				if(this.candidates==0){
+					return;
+				}
+				if(this.checkDisjoint()){
+					return;
+				}
+				//Deepen search, either the next tile is a mine or it isnt
+				int pos = order_start;
+				while(!this.isCandidate(Subset.this.branch_order[pos])){
+					pos++;
+				}
+				final int h = Subset.this.branch_order[pos];
+				final int next = pos+1;
+				if(depth<this.fork_depth){
+					//Both branches go to other threads with their own copies and counts
+					List<RecursiveAction> branches = new ArrayList<>();
+					List<Search> copies = new ArrayList<>();
+					for(boolean mine : new boolean[]{true, false}){
+						final Search copy = new Search(this);
+						copies.add(copy);
+						branches.add(new RecursiveAction(){
+							protected void compute(){
+								copy.assign(h, mine);
+								if(copy.reduce()){
+									copy.search(next, depth+1);
+								}
 							}
-						}
+						});
 					}
-					else{
-						for(Game.Location n : LitStrategy.this.neighbors(loc)){
-							if(this.candidates.contains(n) && candidates_found.add(n)){
-								stack.push(n);
-							}
-						}
+					ForkJoinTask.invokeAll(branches);
+					for(Search copy : copies){
+						this.merge(copy);
 					}
+					return;
 				}
-
-				//If either side is too small, either there is no other side or we dont need to split
-				if(1 >= Math.min(this.candidates.size()-candidates_found.size(), candidates_found.size())){
-					return false;
+				int mark = this.trail_size;
+				for(boolean mine : new boolean[]{true, false}){
+					this.assign(h, mine);
+					if(this.reduce()){
+						this.search(next, depth+1);
+					}
+					this.undo(mark);
 				}
-
-				//The subset can be solved with 2 different subsets independently!
-				Set<Game.Location> candidates_rest = new HashSet<>(this.candidates);
-				candidates_rest.removeAll(candidates_found);
-				Set<Game.Location> open_rest = new HashSet<>(Subset.this.open_area);
-				open_rest.removeAll(open_found);
-
+			}
+			private void record(){
+				this.ensureCounts();
+				final int length = this.selected;
+				Counts occur = this.mine_counts[length];
+				for(int w=0; w<this.selected_bits.length; w++){
+					for(long word=this.selected_bits[w]; word!=0; word&=word-1){
+						occur.add((w<<6)+Long.numberOfTrailingZeros(word), 1);
+					}
+				}
+				this.minecount_counts.add(length, 1);
+				Counts numbers = this.number_counts[length];
+				for(int j=0; j<Subset.this.number_tiles.length; j++){
+					int id = Subset.this.number_hidden_id[j];
+					if(id!=-1 && this.isSelected(id)){
+						continue;
+					}
+					int n=0;
+					long[] neighbors = Subset.this.number_hidden_bits[j];
+					for(int w=0; w<neighbors.length; w++){
+						n += Long.bitCount(neighbors[w] & this.selected_bits[w]);
+					}
+					numbers.add(j*Game.MINE+n, 1);
+				}
+			}
+			public boolean checkDisjoint(){
+				//If were small there's no need to split
+				if(this.candidates<=3){
+					return false;
+				}
+				//Pick 1 candidate arbitrarily and find everything connected to it
+				final int words = Subset.this.words;
+				long[] hidden_found = new long[words];
+				boolean[] open_found = new boolean[Subset.this.open_tiles.length];
+				int[] stack = new int[Subset.this.hidden_tiles.length];
+				int stack_size = 0;
+				for(int w=0; w<words; w++){
+					if(this.candidate_bits[w]!=0){
+						int h = (w<<6)+Long.numberOfTrailingZeros(this.candidate_bits[w]);
+						hidden_found[w] = 1L<<h;
+						stack[stack_size++] = h;
+						break;
+					}
+				}
+				while(stack_size>0){
+					int h = stack[--stack_size];
+					for(int o : Subset.this.hidden_open[h]){
+						if(open_found[o]){
+							continue;
+						}
+						open_found[o] = true;
+						long[] neighbors = Subset.this.open_hidden_bits[o];
+						for(int w=0; w<words; w++){
+							long added = neighbors[w] & this.candidate_bits[w] & ~hidden_found[w];
+							hidden_found[w] |= added;
+							for(; added!=0; added&=added-1){
+								stack[stack_size++] = (w<<6)+Long.numberOfTrailingZeros(added);
+							}
+						}
+					}
+				}
+				int found = 0;
+				for(long word : hidden_found){
+					found += Long.bitCount(word);
+				}
+
+				//If either side is too small, either there is no other side or we dont need to split
+				if(1 >= Math.min(this.candidates-found, found)){
+					return false;
+				}
+
+				//The subset can be solved with 2 different subsets independently!
+				Set<Game.Location> candidates_found = new HashSet<>();
+				Set<Game.Location> candidates_rest = new HashSet<>();
+				final Set<Game.Location> selected = new HashSet<>();
+				for(int h=0; h<Subset.this.hidden_tiles.length; h++){
+					if(this.isCandidate(h)){
+						boolean in_found = (hidden_found[h>>>6] & (1L<<h)) != 0;
+						(in_found ? candidates_found : candidates_rest).add(Subset.this.hidden_tiles[h]);
+					}
+					else if(this.isSelected(h)){
+						selected.add(Subset.this.hidden_tiles[h]);
+					}
+				}
+				Set<Game.Location> open_found_tiles = new HashSet<>();
+				Set<Game.Location> open_rest = new HashSet<>();
+				Map<Game.Location, Integer> mines_remaining = new HashMap<>();
+				for(int o=0; o<open_found.length; o++){
+					(open_found[o] ? open_found_tiles : open_rest).add(Subset.this.open_tiles[o]);
+					mines_remaining.put(Subset.this.open_tiles[o], this.mines_remaining[o]);
+				}
+
 				final Subset[] split = new Subset[]{
-					LitStrategy.this.new Subset(open_found, candidates_found),
+					LitStrategy.this.new Subset(open_found_tiles, candidates_found),
 					LitStrategy.this.new Subset(open_rest, candidates_rest),
 				};
 
 				//Generate all the combinations in each section
 				for(Subset ss : split){
 					ss.prepare_data_structures();
-					Map<Game.Location, Integer> mines_remaining = new HashMap<>(this.mines_remaining);
-					mines_remaining.keySet().retainAll(ss.open_area);
-					Map<Game.Location, Integer> empty_remaining = new HashMap<>(this.empty_remaining);
-					empty_remaining.keySet().retainAll(ss.open_area);
-					SearchState init = ss.new SearchState(
-						new HashSet<>(ss.hidden_area), new HashSet<>(), mines_remaining, empty_remaining
-					);
-					ss.generateCombinationsRecursive(init);
+					Subset.Search init = ss.new Search(mines_remaining);
+					if(init.reduce()){
+						init.search(0, 0);
+					}
+					ss.finish_data_structures();
 					if(LitStrategy.countNonzero(ss.minecount_occurrences)==0){
 						return false;
 					}
@@ -480,8 +1172,9 @@ public class LitStrategy implements Agent{
 					lengths.add(local_lengths);
 				}
 
+				this.ensureCounts();
 				LitStrategy.cartesianProduct(lengths, (List<Integer> subset_minecounts) -> {
-					int total_length = this.selected.size();
+					int total_length = selected.size();
 					for(int n : subset_minecounts){
 						total_length+=n;
 					}
@@ -495,30 +1188,30 @@ public class LitStrategy implements Agent{
 						);
 					}
 					//Combine the mine occurrences from the 2 subsets
-					Subset.this.minecount_occurrences[total_length] = Subset.this.minecount_occurrences[total_length].add(total_multiplier);
-					Map<Game.Location, BigInteger> total_mine_occurrences = Subset.this.mine_occurrences.get(total_length);
+					this.minecount_counts.add(total_length, total_multiplier);
+					Counts total_mine_occurrences = this.mine_counts[total_length];
 					for(int i=0; i<split.length; i++){
 						int local_mines = subset_minecounts.get(i);
 						BigInteger multiplier = total_multiplier.divide(split[i].minecount_occurrences[local_mines]);
 						Map<Game.Location, BigInteger> local_mine_occurrences = split[i].mine_occurrences.get(local_mines);
-						for(Game.Location loc : local_mine_occurrences.keySet()){
-							BigInteger total = local_mine_occurrences.get(loc).multiply(multiplier);
-							total_mine_occurrences.put(loc,
-								total_mine_occurrences.get(loc).add(total)
-							);
+						for(int j=0; j<Subset.this.hidden_tiles.length; j++){
+							BigInteger local = local_mine_occurrences.get(Subset.this.hidden_tiles[j]);
+							if(local!=null){
+								total_mine_occurrences.add(j, local.multiply(multiplier));
+							}
 						}
 					}
-					for(Game.Location loc : this.selected){
-						total_mine_occurrences.put(loc,
-							total_mine_occurrences.get(loc).add(total_multiplier)
-						);
+					for(int j=0; j<Subset.this.hidden_tiles.length; j++){
+						if(this.isSelected(j)){
+							total_mine_occurrences.add(j, total_multiplier);
+						}
 					}
 
 					//Combine the number occurrences from the 2 subsets
 					Map<Game.Location, BigInteger[]> local_number_occurrences = new HashMap<>();
 
-					for(Game.Location loc : Subset.this.number_occurrences.get(total_length).keySet()){
-						if(this.selected.contains(loc)){
+					for(Game.Location loc : Subset.this.number_tiles){
+						if(selected.contains(loc)){
 							//Even tho itll have data about its numbers it is not relevant cause its always a mine
 							continue;
 						}
@@ -562,7 +1255,7 @@ public class LitStrategy implements Agent{
 					}
 
 					//Adjust the numbers for the tiles already selected
-					for(Game.Location loc : this.selected){
+					for(Game.Location loc : selected){
 						for(Game.Location n : LitStrategy.this.neighbors(loc)){
 							BigInteger[] numbers = local_number_occurrences.get(n);
 							if(numbers==null){
@@ -574,15 +1267,19 @@ public class LitStrategy implements Agent{
 						}
 					}
 					//Update the subset with these numbers
+					Counts total_number_occurrences = this.number_counts[total_length];
 					for(Map.Entry<Game.Location,BigInteger[]> e : local_number_occurrences.entrySet()){
 						BigInteger[] src = e.getValue();
-						BigInteger[] dest = Subset.this.number_occurrences.get(total_length).get(e.getKey());
+						int offset = Subset.this.number_index.get(e.getKey())*Game.MINE;
 						for(int i=0; i<src.length; i++){
-							dest[i] = dest[i].add(src[i]);
+							total_number_occurrences.add(offset+i, src[i]);
 						}
 					}
 				});
 
+				if(PROFILE){
+					Profile.disjoint_splits.increment();
+				}
 				//trvth nvke
 				return true;
 			}
@@ -593,112 +1290,155 @@ public class LitStrategy implements Agent{
 			this.prepare_data_structures();
 
 			Map<Game.Location, Integer> mines_remaining = new HashMap<>();
-			Map<Game.Location, Integer> empty_remaining = new HashMap<>();
 			for(Game.Location loc : this.open_area){
 				int mines = LitStrategy.this.game.board[loc.row][loc.col];
-				int empty = 0;
 				for(Game.Location n : LitStrategy.this.neighbors(loc)){
-					switch(LitStrategy.this.game.board[n.row][n.col]){
-					case Game.MINE:
+					if(LitStrategy.this.game.board[n.row][n.col]==Game.MINE){
 						mines--;
-						break;
-					case Game.UNKNOWN:
-						empty++;
-						break;
 					}
 				}
 				mines_remaining.put(loc, mines);
-				empty_remaining.put(loc, empty);
 			}
-			this.generateCombinationsRecursive(
-				new SearchState(
-					new HashSet<>(this.hidden_area), new HashSet<>(), mines_remaining, empty_remaining
-				)
-			);
-		}
-		private void generateCombinationsRecursive(SearchState state){
-			if(state.selected.size()>this.max_mines){
-				return;
+			Search search = new Search(mines_remaining);
+			if(search.reduce()){
+				search.search(0, 0);
 			}
-			//Process a complete valid combination
-			if(state.isComplete()){
-				Map<Game.Location, BigInteger> occur = this.mine_occurrences.get(state.selected.size());
-				for(Game.Location loc : state.selected){
-					occur.put(loc, occur.get(loc).add(BigInteger.ONE));
-				}
-				this.minecount_occurrences[state.selected.size()] = this.minecount_occurrences[state.selected.size()].add(BigInteger.ONE);
-				for(Map.Entry<Game.Location, BigInteger[]> entry : this.number_occurrences.get(state.selected.size()).entrySet()){
-					if(!state.selected.contains(entry.getKey())){
-						int n=0;
-						for(Game.Location neighbor : LitStrategy.this.neighbors(entry.getKey())){
-							if(state.selected.contains(neighbor)){
-								n++;
-							}
-						}
-						entry.getValue()[n] = entry.getValue()[n].add(BigInteger.ONE);
-					}
-				}
-				return;
+			this.finish_data_structures();
+		}
+	}
+	//Subsets with at least this many hidden tiles have the top of their search split up between the common ForkJoinPool's threads
+	//Set with -Dminesweeper.parallelSubsetSize, it only happens when the pool has more than 1 thread
+	protected static final int PARALLEL_SUBSET_SIZE = Integer.getInteger("minesweeper.parallelSubsetSize", 40);
+	private static int forkDepth(int hidden_tiles){
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		if(parallelism<=1 || hidden_tiles<PARALLEL_SUBSET_SIZE){
+			return 0;
+		}
+		//Around 4 tasks for each thread, since the branches can be really uneven
+		return 32-Integer.numberOfLeadingZeros(parallelism-1)+2;
+	}
+	//Bitset with the given positions set
+	private static long[] bits(int[] positions, int words){
+		long[] bits = new long[words];
+		for(int i : positions){
+			bits[i>>>6] |= 1L<<i;
+		}
+		return bits;
+	}
+	//Positions in index of the given tiles that are in it
+	private static int[] localNeighbors(Game.Location[] tiles, Map<Game.Location, Integer> index){
+		int[] local = new int[tiles.length];
+		int size = 0;
+		for(Game.Location loc : tiles){
+			Integer i = index.get(loc);
+			if(i!=null){
+				local[size++] = i;
 			}
-			if(state.candidates.size()==0 || state.deadEnd()){
+		}
+		return Arrays.copyOf(local, size);
+	}
+
+	//Counts that stay as longs while they fit, and carry on as BigIntegers if they overflow
+	private static class Counts{
+		private final long[] small;
+		private BigInteger[] big = null;
+		public Counts(int size){
+			this.small = new long[size];
+		}
+		public void add(int i, long n){
+			long sum = this.small[i]+n;
+			if(((this.small[i]^sum) & (n^sum)) < 0){
+				BigInteger total = this.promote(i).add(BigInteger.valueOf(n));
+				this.big[i] = total;
 				return;
 			}
-			if(state.reduce()){
-				this.generateCombinationsRecursive(state);
-				return;
+			this.small[i] = sum;
+		}
+		public void add(int i, BigInteger n){
+			if(n.bitLength()<Long.SIZE-1){
+				this.add(i, n.longValue());
 			}
-			if(state.checkDisjoint()){
-				return;
+			else{
+				//The array might only exist after promoting
+				BigInteger total = this.promote(i).add(n);
+				this.big[i] = total;
 			}
-			//Deepen search
-			if(state.selected.size()<this.max_mines){
-				//Sort based on a "fail first heuristic" increases performance
-				//Most to least neighbors that are open in this subset works ok
-				List<Game.Location> choices = new ArrayList<>(state.candidates);
-				final Map<Game.Location, Integer> edge_score = new HashMap<>();
-				for(Game.Location loc : choices){
-					int i=0;
-					for(Game.Location n : LitStrategy.this.neighbors(loc)){
-						if(Subset.this.open_area.contains(n)){
-							i++;
-						}
-					}
-					edge_score.put(loc, i);
-				}
-				choices.sort((Game.Location a, Game.Location b)->edge_score.get(b)-edge_score.get(a));
-				for(Game.Location n : choices){
-					SearchState nxt = new SearchState(state);
-					state.discard(n);
-					nxt.select(n);
-					this.generateCombinationsRecursive(nxt);
+		}
+		//Moves the long part of a count into its BigInteger part
+		private BigInteger promote(int i){
+			if(this.big==null){
+				this.big = new BigInteger[this.small.length];
+			}
+			BigInteger moved = BigInteger.valueOf(this.small[i]);
+			this.big[i] = this.big[i]==null ? moved : this.big[i].add(moved);
+			this.small[i] = 0;
+			return this.big[i];
+		}
+		public void add(Counts other){
+			for(int i=0; i<this.small.length; i++){
+				this.add(i, other.small[i]);
+				if(other.big!=null && other.big[i]!=null){
+					this.add(i, other.big[i]);
 				}
 			}
 		}
+		public BigInteger get(int i){
+			BigInteger small = BigInteger.valueOf(this.small[i]);
+			if(this.big==null || this.big[i]==null){
+				return small;
+			}
+			return this.big[i].add(small);
+		}
 	}
 
 	List<Subset> subsets;
+	//Subsets that have been solved before, keyed by a fingerprint of their areas, least recently used first
+	//Their counts depend on their areas and on max_mines, which can drop as flags use up the minecount
+	//So a cached one only gets reused if both still match, and the size limit keeps it from growing forever
+	protected static final int SUBSET_CACHE_SIZE = 256;
+	protected final Map<Long, Subset> subset_cache = new LinkedHashMap<>(16, 0.75f, true){
+		protected boolean removeEldestEntry(Map.Entry<Long, Subset> eldest){
+			return this.size()>SUBSET_CACHE_SIZE;
+		}
+	};
+	//Adding these up for every tile in a subset gives the same fingerprint whatever order they're found in
+	private long fingerprint(Game.Location loc, boolean hidden){
+		long x = (loc.row*(long)this.game.width+loc.col)*2+(hidden?1:0)+1;
+		x = (x ^ (x>>>30)) * 0xbf58476d1ce4e5b9L;
+		x = (x ^ (x>>>27)) * 0x94d049bb133111ebL;
+		return x ^ (x>>>31);
+	}
+	//Where the subsets that aren't cached get solved, they don't share anything so they can all go at once
+	//By default its the common ForkJoinPool if that has more than 1 thread, null solves them one by one on the agent's thread
+	private static volatile Executor subset_executor = ForkJoinPool.getCommonPoolParallelism()>1 ? ForkJoinPool.commonPool() : null;
+	public static void setSubsetExecutor(Executor executor){
+		LitStrategy.subset_executor = executor;
+	}
 	protected void generateSubsets(){
 		//Depth-first search to identify disjoint areas that have useful info
 		final int[][] board = this.game.board;
 		List<Subset> new_subsets = new ArrayList<>();
+		Map<Long, Subset> unsolved = new LinkedHashMap<>();
 		Set<Game.Location> found = new HashSet<>();
 		for(int r=0; r<this.game.height; r++){
 			for(int c=0; c<this.game.width; c++){
 				if(board[r][c]==Game.UNKNOWN || board[r][c]==Game.MINE){
 					continue;
 				}
-				Game.Location loc = new Game.Location(r,c);
+				Game.Location loc = Game.Location.of(r,c);
 				if(!found.add(loc)){
 					continue;
 				}
 				Set<Game.Location> open_subset = new HashSet<>();
 				Set<Game.Location> hidden_subset = new HashSet<>();
+				long fingerprint = 0;
 				Stack<Game.Location> stack = new Stack<>();
 				stack.push(loc);
 				while(!stack.empty()){
 					Game.Location curr = stack.pop();
 					if(board[curr.row][curr.col]==Game.UNKNOWN){
 						hidden_subset.add(curr);
+						fingerprint += this.fingerprint(curr, true);
 						for(Game.Location n : this.neighbors(curr)){
 							if(board[n.row][n.col]!=Game.UNKNOWN && board[n.row][n.col]!=Game.MINE){
 								if(found.add(n)){
@@ -707,135 +1447,738 @@ public class LitStrategy implements Agent{
 							}
 						}
 					}
-					else if(board[curr.row][curr.col]!=Game.MINE){
-						open_subset.add(curr);
-						for(Game.Location n : this.neighbors(curr)){
-							if(board[n.row][n.col]==Game.UNKNOWN){
-								if(found.add(n)){
-									stack.push(n);
-								}
-							}
+					else if(board[curr.row][curr.col]!=Game.MINE){
+						open_subset.add(curr);
+						fingerprint += this.fingerprint(curr, false);
+						for(Game.Location n : this.neighbors(curr)){
+							if(board[n.row][n.col]==Game.UNKNOWN){
+								if(found.add(n)){
+									stack.push(n);
+								}
+							}
+						}
+					}
+				}
+				if(hidden_subset.size()==0){
+					continue;
+				}
+				//Caching info about subsets thatve already been found
+				Subset ss = new Subset(open_subset, hidden_subset);
+				Subset cached = this.subset_cache.get(fingerprint);
+				if(cached!=null && cached.equals(ss) && cached.max_mines==ss.max_mines){
+					if(PROFILE){
+						Profile.subset_cache_hits.increment();
+					}
+					new_subsets.add(cached);
+				}
+				else{
+					if(PROFILE){
+						Profile.subset_cache_misses.increment();
+					}
+					unsolved.put(fingerprint, ss);
+					new_subsets.add(ss);
+				}
+			}
+		}
+		this.approximate = false;
+		this.sampled = false;
+		int frontier_size = 0;
+		for(Subset ss : new_subsets){
+			frontier_size += ss.hidden_area.size();
+		}
+		if(SAMPLES>0 && frontier_size>=SAMPLING_FRONTIER_SIZE){
+			this.sampled = true;
+			this.subsets = new ArrayList<>();
+			return;
+		}
+		try{
+			this.solveSubsets(unsolved.values());
+		}
+		catch(BudgetExceeded e){
+			//None of the unsolved ones are any good now, the probabilities will be sampled or estimated without subsets
+			LitStrategy.budget_fallbacks.increment();
+			this.sampled = SAMPLES>0;
+			this.approximate = !this.sampled;
+			this.subsets = new ArrayList<>();
+			return;
+		}
+		this.subset_cache.putAll(unsolved);
+		this.subsets = new_subsets;
+	}
+	private void solveSubsets(Collection<Subset> unsolved){
+		Executor executor = LitStrategy.subset_executor;
+		if(executor==null || unsolved.size()<=1){
+			for(Subset ss : unsolved){
+				ss.generateCombinations();
+			}
+			return;
+		}
+		List<CompletableFuture<Void>> solving = new ArrayList<>();
+		for(Subset ss : unsolved){
+			solving.add(CompletableFuture.runAsync(ss::generateCombinations, executor));
+		}
+		try{
+			CompletableFuture.allOf(solving.toArray(new CompletableFuture<?>[0])).join();
+		}
+		catch(CompletionException e){
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	Map<Game.Location, Double> mine_probabilities;
+	protected List<BigInteger[]> subset_count_multipliers;
+	protected void calculateMineProbabilities(){
+		if(this.approximate){
+			this.estimateMineProbabilities();
+			return;
+		}
+		if(this.sampled){
+			//Gets the number probabilities at the same time
+			this.sampleProbabilities();
+			return;
+		}
+		final int[][] board = this.game.board;
+		int unknown = 0;
+		for(int r=0; r<this.game.height; r++){
+			for(int c=0; c<this.game.width; c++){
+				if(board[r][c]==Game.UNKNOWN){
+					unknown++;
+				}
+			}
+		}
+		//Each subset's mine counts as a polynomial, where the coefficient of x^i is how many ways it can have i mines
+		final int minecount = this.game.minecount;
+		final int k = this.subsets.size();
+		List<BigInteger[]> polynomials = new ArrayList<>();
+		for(Subset ss : this.subsets){
+			unknown -= ss.hidden_area.size();
+			int degree = ss.minecount_occurrences.length-1;
+			while(ss.minecount_occurrences[degree].equals(BigInteger.ZERO)){
+				degree--;
+			}
+			polynomials.add(Arrays.copyOf(ss.minecount_occurrences, degree+1));
+		}
+		final int unknown_squares = unknown;
+		//Ways to put the rest of the mines in the tiles that aren't in any subset, given how many the subsets have
+		//These are unknown_squares choose (minecount-sum_mines), each one made from the last so big boards don't start each from scratch
+		//Once there are more mines left than tiles the multiplier hits 0 and the rest stay 0
+		BigInteger[] rest_ways = new BigInteger[minecount+1];
+		BigInteger ways = BigInteger.ONE;
+		for(int left=0; left<=minecount; left++){
+			rest_ways[minecount-left] = ways;
+			ways = ways.multiply(BigInteger.valueOf(unknown_squares-left)).divide(BigInteger.valueOf(left+1));
+		}
+
+		//Multiplying the polynomials together gives the number of ways for every total
+		//The prefix and suffix products give the same thing for every subset except one
+		List<BigInteger[]> prefix = new ArrayList<>();
+		prefix.add(new BigInteger[]{BigInteger.ONE});
+		for(int i=0; i<k; i++){
+			prefix.add(LitStrategy.multiplyPolynomials(prefix.get(i), polynomials.get(i), minecount));
+		}
+		BigInteger[][] suffix = new BigInteger[k+1][];
+		suffix[k] = new BigInteger[]{BigInteger.ONE};
+		for(int i=k-1; i>=0; i--){
+			suffix[i] = LitStrategy.multiplyPolynomials(polynomials.get(i), suffix[i+1], minecount);
+		}
+
+		//Calculate number of times each permutation occurs in total
+		final BigInteger[] total_lengths = new BigInteger[minecount+1];
+		Arrays.fill(total_lengths, BigInteger.ZERO);
+		BigInteger[] all_subsets = prefix.get(k);
+		for(int sum_mines=0; sum_mines<all_subsets.length; sum_mines++){
+			total_lengths[sum_mines] = rest_ways[sum_mines].multiply(all_subsets[sum_mines]);
+		}
+		//Each subset's multiplier for a length is the number of ways everything else can go with it
+		final List<BigInteger[]> subset_count_multipliers = new ArrayList<>();
+		for(int i=0; i<k; i++){
+			BigInteger[] own = polynomials.get(i);
+			BigInteger[] others = LitStrategy.multiplyPolynomials(prefix.get(i), suffix[i+1], minecount);
+			BigInteger[] multipliers = new BigInteger[own.length];
+			Arrays.fill(multipliers, BigInteger.ZERO);
+			for(int length=0; length<own.length && length<=minecount; length++){
+				if(own[length].equals(BigInteger.ZERO)){
+					continue;
+				}
+				for(int j=0; j<others.length && length+j<=minecount; j++){
+					multipliers[length] = multipliers[length].add(rest_ways[length+j].multiply(others[j]));
+				}
+			}
+			subset_count_multipliers.add(multipliers);
+		}
+		this.subset_count_multipliers = subset_count_multipliers;
+
+		//Calculate probability of each tile being a mine
+		BigInteger total_combinations = BigInteger.ZERO;
+		for(BigInteger i : total_lengths){
+			total_combinations = total_combinations.add(i);
+		}
+		this.mine_probabilities = new HashMap<>();
+		for(int i=0; i<this.subsets.size(); i++){
+			Subset ss = this.subsets.get(i);
+			BigInteger[] multipliers = subset_count_multipliers.get(i);
+			for(Game.Location loc : ss.hidden_area){
+				BigInteger total_occurrences = BigInteger.ZERO;
+				for(int size=0; size<multipliers.length; size++){
+					total_occurrences = total_occurrences.add(
+						multipliers[size].multiply(
+							ss.mine_occurrences.get(size).get(loc)
+						)
+					);
+				}
+				this.mine_probabilities.put(loc, LitStrategy.ratio(total_occurrences,total_combinations));
+			}
+		}
+		//Probability of all the other tiles being mines, keyed as null
+		double unknown_probability = 0;
+		if(unknown_squares>0){
+			for(int i=0; i<total_lengths.length; i++){
+				double length_combinations = LitStrategy.ratio(total_lengths[i],total_combinations);
+				unknown_probability += (double)(this.game.minecount-i) / unknown_squares * length_combinations;
+			}
+			this.mine_probabilities.put(null, unknown_probability);
+		}
+
+
+		//System.out.println(this.mine_probabilities);
+
+	}
+
+
+	//Cheap stand in for the mine probabilities when the subsets took too long
+	//Each tile next to a number gets the highest share of mines left out of all the numbers around it
+	//and the rest of the tiles share whatever mines are left after that
+	protected void estimateMineProbabilities(){
+		final int[][] board = this.game.board;
+		this.mine_probabilities = new HashMap<>();
+		this.subset_count_multipliers = new ArrayList<>();
+		int unknown = 0;
+		for(int r=0; r<this.game.height; r++){
+			for(int c=0; c<this.game.width; c++){
+				if(board[r][c]==Game.UNKNOWN){
+					unknown++;
+				}
+				if(board[r][c]==Game.UNKNOWN || board[r][c]==Game.MINE){
+					continue;
+				}
+				Game.Location loc = Game.Location.of(r,c);
+				int mines = board[r][c];
+				int empty = 0;
+				for(Game.Location n : this.neighbors(loc)){
+					if(board[n.row][n.col]==Game.MINE){
+						mines--;
+					}
+					else if(board[n.row][n.col]==Game.UNKNOWN){
+						empty++;
+					}
+				}
+				if(empty==0){
+					continue;
+				}
+				double share = Math.max(0.0, Math.min(1.0, (double)mines/empty));
+				for(Game.Location n : this.neighbors(loc)){
+					if(board[n.row][n.col]==Game.UNKNOWN){
+						this.mine_probabilities.merge(n, share, Math::max);
+					}
+				}
+			}
+		}
+		double frontier_mines = 0;
+		for(double p : this.mine_probabilities.values()){
+			frontier_mines += p;
+		}
+		int unknown_squares = unknown-this.mine_probabilities.size();
+		if(unknown_squares>0){
+			//Never quite 0 or 1 since probabilitySafeMoves would take that as certain
+			double rest = (this.game.minecount-frontier_mines)/unknown_squares;
+			this.mine_probabilities.put(null, Math.max(Double.MIN_VALUE, Math.min(Math.nextDown(1.0), rest)));
+		}
+	}
+
+	//Sampling engine for frontiers too big to count exactly, turned on by giving it a number of samples with -Dminesweeper.samples
+	//More samples are more accurate, and the same seed always gives the same samples
+	//It takes over when the tiles in the subsets add up to SAMPLING_FRONTIER_SIZE, or when the budget runs out
+	protected static final int SAMPLES = Integer.getInteger("minesweeper.samples", 0);
+	protected static final int SAMPLING_FRONTIER_SIZE = Integer.getInteger("minesweeper.samplingFrontierSize", 200);
+	protected static final long SAMPLING_SEED = Long.getLong("minesweeper.samplingSeed", 21);
+	//Set when the probabilities for the current subsets come from the sampler
+	private boolean sampled = false;
+	protected void sampleProbabilities(){
+		Sampler sampler = new Sampler();
+		if(!sampler.initialize()){
+			//Couldnt even find 1 arrangement of mines to start from
+			this.approximate = true;
+			this.estimateMineProbabilities();
+			return;
+		}
+		sampler.run(SAMPLES);
+		sampler.finish();
+	}
+	//Markov chain over arrangements of mines in the tiles next to numbers that fit all the numbers
+	//Each step picks a number and redraws the tiles around it out of every arrangement that still fits,
+	//weighted by how many ways the rest of the mines can go in the other tiles
+	private class Sampler{
+		private final Random rand = new Random(SAMPLING_SEED);
+		private final int[][] board = LitStrategy.this.game.board;
+		private final int minecount = LitStrategy.this.game.minecount;
+		//Hidden tiles next to numbers, and the numbers next to them, by local index
+		private final Game.Location[] hidden_tiles;
+		private final Map<Game.Location, Integer> hidden_index = new HashMap<>();
+		private final int[][] hidden_open;
+		private final int[][] open_hidden;
+		//Mines each number needs out of its hidden tiles, and how many it has now
+		private final int[] target;
+		private final int[] around;
+		private final boolean[] mine;
+		private int mines = 0;
+		//All the other hidden tiles
+		private final int unknown_squares;
+		private final double[] log_factorial;
+
+		//Tallies over the samples
+		private int samples = 0;
+		private final long[] mine_hits;
+		private final long[] distributed_hits;
+		private final Map<Game.Location, double[]> number_weights = new HashMap<>();
+
+		public Sampler(){
+			List<Game.Location> hidden = new ArrayList<>();
+			List<Game.Location> open = new ArrayList<>();
+			List<Integer> targets = new ArrayList<>();
+			int unknown = 0;
+			for(int r=0; r<LitStrategy.this.game.height; r++){
+				for(int c=0; c<LitStrategy.this.game.width; c++){
+					if(this.board[r][c]==Game.UNKNOWN){
+						unknown++;
+					}
+					if(this.board[r][c]==Game.UNKNOWN || this.board[r][c]==Game.MINE){
+						continue;
+					}
+					Game.Location loc = Game.Location.of(r,c);
+					int need = this.board[r][c];
+					boolean any = false;
+					for(Game.Location n : LitStrategy.this.neighbors(loc)){
+						if(this.board[n.row][n.col]==Game.MINE){
+							need--;
+						}
+						else if(this.board[n.row][n.col]==Game.UNKNOWN){
+							any = true;
+							if(!this.hidden_index.containsKey(n)){
+								this.hidden_index.put(n, hidden.size());
+								hidden.add(n);
+							}
+						}
+					}
+					if(any){
+						open.add(loc);
+						targets.add(need);
+					}
+				}
+			}
+			this.hidden_tiles = hidden.toArray(new Game.Location[0]);
+			this.unknown_squares = unknown-this.hidden_tiles.length;
+			this.target = new int[open.size()];
+			this.around = new int[open.size()];
+			this.open_hidden = new int[open.size()][];
+			List<List<Integer>> hidden_open = new ArrayList<>();
+			for(int i=0; i<this.hidden_tiles.length; i++){
+				hidden_open.add(new ArrayList<>());
+			}
+			for(int o=0; o<open.size(); o++){
+				this.target[o] = targets.get(o);
+				this.open_hidden[o] = LitStrategy.localNeighbors(LitStrategy.this.neighbors(open.get(o)), this.hidden_index);
+				for(int h : this.open_hidden[o]){
+					hidden_open.get(h).add(o);
+				}
+			}
+			this.hidden_open = new int[this.hidden_tiles.length][];
+			for(int h=0; h<this.hidden_tiles.length; h++){
+				this.hidden_open[h] = hidden_open.get(h).stream().mapToInt(Integer::intValue).toArray();
+			}
+			this.mine = new boolean[this.hidden_tiles.length];
+			this.mine_hits = new long[this.hidden_tiles.length];
+			this.distributed_hits = new long[Math.max(0, this.minecount)+1];
+			this.log_factorial = new double[unknown+2];
+			for(int i=1; i<this.log_factorial.length; i++){
+				this.log_factorial[i] = this.log_factorial[i-1]+Math.log(i);
+			}
+		}
+		private double logComb(int n, int r){
+			if(r<0 || r>n){
+				return Double.NEGATIVE_INFINITY;
+			}
+			return this.log_factorial[n]-this.log_factorial[r]-this.log_factorial[n-r];
+		}
+		//Log of how many ways the rest of the mines fit in the other tiles with this many in the frontier
+		private double logWays(int frontier_mines){
+			return this.logComb(this.unknown_squares, this.minecount-frontier_mines);
+		}
+		private void set(int h, boolean value){
+			if(this.mine[h]==value){
+				return;
+			}
+			this.mine[h] = value;
+			int change = value ? 1 : -1;
+			this.mines += change;
+			for(int o : this.hidden_open[h]){
+				this.around[o] += change;
+			}
+		}
+
+		//Backtracking search for any arrangement that fits, with the tiles in the order theyre found from each other
+		//so neighboring tiles get decided together
+		public boolean initialize(){
+			final int n = this.hidden_tiles.length;
+			int[] order = new int[n];
+			boolean[] ordered = new boolean[n];
+			boolean[] open_seen = new boolean[this.target.length];
+			int size = 0;
+			for(int start=0; start<n; start++){
+				if(ordered[start]){
+					continue;
+				}
+				ordered[start] = true;
+				order[size++] = start;
+				for(int i=size-1; i<size; i++){
+					for(int o : this.hidden_open[order[i]]){
+						if(open_seen[o]){
+							continue;
+						}
+						open_seen[o] = true;
+						for(int h : this.open_hidden[o]){
+							if(!ordered[h]){
+								ordered[h] = true;
+								order[size++] = h;
+							}
+						}
+					}
+				}
+			}
+			int[] undecided = new int[this.target.length];
+			for(int o=0; o<undecided.length; o++){
+				undecided[o] = this.open_hidden[o].length;
+			}
+			double density = (double)Math.max(0, this.minecount)/Math.max(1, n+this.unknown_squares);
+			int[] tried = new int[n];
+			boolean[] first_value = new boolean[n];
+			long steps_left = 1000L*(n+1);
+			int pos = 0;
+			while(pos>=0 && pos<n){
+				if(steps_left-- == 0){
+					return false;
+				}
+				int h = order[pos];
+				if(tried[pos]>0){
+					this.set(h, false);
+					for(int o : this.hidden_open[h]){
+						undecided[o]++;
+					}
+				}
+				if(tried[pos]==2){
+					tried[pos] = 0;
+					pos--;
+					continue;
+				}
+				if(tried[pos]==0){
+					first_value[pos] = this.rand.nextDouble()<density;
+				}
+				boolean value = tried[pos]==0 ? first_value[pos] : !first_value[pos];
+				tried[pos]++;
+				this.set(h, value);
+				boolean fits = true;
+				for(int o : this.hidden_open[h]){
+					undecided[o]--;
+					fits &= this.around[o]<=this.target[o] && this.around[o]+undecided[o]>=this.target[o];
+				}
+				if(fits){
+					pos++;
+				}
+			}
+			return pos==n;
+		}
+
+		//Arrangements of the tiles being redrawn that fit, as bitmasks, with how many mines are in each
+		private long[] options = new long[64];
+		private int[] option_mines = new int[64];
+		private int option_count;
+		//Redrawing just the tiles around 1 number cant move mines between numbers that share tiles,
+		//so the tiles around the numbers next to it come along as well, up to this many
+		private static final int BLOCK_SIZE = 20;
+		private final int[] block_buffer = new int[BLOCK_SIZE+Game.MINE];
+		private final Set<Integer> block_open = new HashSet<>();
+		private int[] block(){
+			int size = 0;
+			this.block_open.clear();
+			List<Integer> opens = new ArrayList<>();
+			opens.add(this.rand.nextInt(this.open_hidden.length));
+			this.block_open.add(opens.get(0));
+			for(int i=0; i<opens.size() && size<BLOCK_SIZE; i++){
+				outer:
+				for(int h : this.open_hidden[opens.get(i)]){
+					for(int j=0; j<size; j++){
+						if(this.block_buffer[j]==h){
+							continue outer;
+						}
+					}
+					this.block_buffer[size++] = h;
+					for(int o : this.hidden_open[h]){
+						if(this.block_open.add(o)){
+							opens.add(o);
+						}
+					}
+				}
+			}
+			return Arrays.copyOf(this.block_buffer, size);
+		}
+		private void step(){
+			int[] block = this.block();
+			for(int h : block){
+				this.set(h, false);
+			}
+			this.option_count = 0;
+			this.findOptions(block, 0, 0, 0);
+			//Weights relative to the most likely option so they dont underflow
+			double best = Double.NEGATIVE_INFINITY;
+			for(int i=0; i<this.option_count; i++){
+				best = Math.max(best, this.logWays(this.mines+this.option_mines[i]));
+			}
+			int choice = -1;
+			if(best!=Double.NEGATIVE_INFINITY){
+				double[] weights = new double[this.option_count];
+				double total = 0;
+				for(int i=0; i<this.option_count; i++){
+					weights[i] = Math.exp(this.logWays(this.mines+this.option_mines[i])-best);
+					total += weights[i];
+				}
+				double pick = this.rand.nextDouble()*total;
+				for(choice=0; choice<this.option_count-1 && pick>=weights[choice]; choice++){
+					pick -= weights[choice];
+				}
+			}
+			else if(this.option_count>0){
+				choice = this.rand.nextInt(this.option_count);
+			}
+			//There is always at least the arrangement it had before
+			for(int i=0; i<block.length; i++){
+				this.set(block[i], (this.options[choice]>>i & 1)!=0);
+			}
+		}
+		private void findOptions(int[] block, int i, long mask, int mines){
+			if(i==block.length){
+				for(int h : block){
+					for(int o : this.hidden_open[h]){
+						if(this.around[o]!=this.target[o]){
+							return;
+						}
+					}
+				}
+				if(this.option_count==this.options.length){
+					this.options = Arrays.copyOf(this.options, this.option_count*2);
+					this.option_mines = Arrays.copyOf(this.option_mines, this.option_count*2);
+				}
+				this.options[this.option_count] = mask;
+				this.option_mines[this.option_count] = mines;
+				this.option_count++;
+				return;
+			}
+			int h = block[i];
+			//Leaving it empty works as long as the numbers around it can still get enough from the rest of the block
+			boolean empty_fits = true;
+			for(int o : this.hidden_open[h]){
+				int remaining = 0;
+				for(int j=i+1; j<block.length; j++){
+					for(int o2 : this.hidden_open[block[j]]){
+						if(o2==o){
+							remaining++;
 						}
 					}
 				}
-				if(hidden_subset.size()==0){
-					continue;
-				}
-				//Caching info about subsets thatve already been found
-				Subset ss = new Subset(open_subset, hidden_subset);
-				int idx = this.subsets==null ? -1 : this.subsets.indexOf(ss);
-				if(idx==-1){
-					ss.generateCombinations();
-					new_subsets.add(ss);
+				if(this.around[o]+remaining<this.target[o]){
+					empty_fits = false;
 				}
-				else{
-					Subset cached = this.subsets.get(idx);
-					new_subsets.add(cached);
+			}
+			if(empty_fits){
+				this.findOptions(block, i+1, mask, mines);
+			}
+			this.set(h, true);
+			boolean mine_fits = true;
+			for(int o : this.hidden_open[h]){
+				if(this.around[o]>this.target[o]){
+					mine_fits = false;
 				}
 			}
+			if(mine_fits){
+				this.findOptions(block, i+1, mask | 1L<<i, mines+1);
+			}
+			this.set(h, false);
 		}
-		this.subsets = new_subsets;
-	}
 
-	Map<Game.Location, Double> mine_probabilities;
-	protected List<BigInteger[]> subset_count_multipliers;
-	protected void calculateMineProbabilities(){
-		final int[][] board = this.game.board;
-		int unknown = 0;
-		for(int r=0; r<this.game.height; r++){
-			for(int c=0; c<this.game.width; c++){
-				if(board[r][c]==Game.UNKNOWN){
-					unknown++;
+		public void run(int count){
+			if(this.open_hidden.length==0){
+				//Nothing to redraw, every sample would be the same
+				for(int i=0; i<count; i++){
+					this.record();
+				}
+				return;
+			}
+			//Enough steps between samples to redraw about every tile once
+			int sweep = Math.max(1, this.open_hidden.length/2);
+			for(int i=0; i<10*sweep; i++){
+				this.step();
+			}
+			for(int sample=0; sample<count; sample++){
+				for(int i=0; i<sweep; i++){
+					this.step();
 				}
+				this.record();
 			}
 		}
-		List<List<Integer>> subset_counts = new ArrayList<>();
-		final List<BigInteger[]> subset_count_multipliers = new ArrayList<>();
-		for(Subset ss : this.subsets){
-			unknown -= ss.hidden_area.size();
-			List<Integer> counts = new ArrayList<>();
-			for(int i=0; i<ss.minecount_occurrences.length; i++){
-				if(!ss.minecount_occurrences[i].equals(BigInteger.ZERO)){
-					counts.add(i);
+		private void record(){
+			int distributed_mines = this.minecount-this.mines;
+			if(distributed_mines<0 || distributed_mines>this.unknown_squares){
+				//Cant actually happen with this many mines left
+				return;
+			}
+			this.samples++;
+			this.distributed_hits[distributed_mines]++;
+			for(int h=0; h<this.mine.length; h++){
+				if(this.mine[h]){
+					this.mine_hits[h]++;
 				}
 			}
-			subset_counts.add(counts);
-			BigInteger[] multipliers = new BigInteger[counts.get(counts.size()-1)+1];
-			for(int i=0; i<multipliers.length; i++){
-				multipliers[i] = BigInteger.ZERO;
+			//Numbers of the tiles next to the frontier depend on this arrangement, the rest only on how many mines are left
+			Set<Game.Location> done = new HashSet<>();
+			for(Game.Location t : this.hidden_tiles){
+				this.recordNumbers(t, distributed_mines, 1, done);
+				for(Game.Location n : LitStrategy.this.neighbors(t)){
+					if(this.board[n.row][n.col]==Game.UNKNOWN && !this.hidden_index.containsKey(n)){
+						this.recordNumbers(n, distributed_mines, 1, done);
+					}
+				}
 			}
-			subset_count_multipliers.add(multipliers);
 		}
-		final int unknown_squares = unknown;
-		final BigInteger[] total_lengths = new BigInteger[this.game.minecount+1];
-		Arrays.fill(total_lengths, BigInteger.ZERO);
-		
-		//Calculate number of times each permutation occurs in total
-		cartesianProduct(subset_counts, (List<Integer> lengths) -> {
-			int sum_mines = 0;
-			for(int i=0; i<lengths.size(); i++){
-				sum_mines += lengths.get(i);
-			}
-			if(sum_mines>this.game.minecount || sum_mines+unknown_squares<this.game.minecount){
+		private void recordNumbers(Game.Location t, int distributed_mines, long times, Set<Game.Location> done){
+			if(!done.add(t)){
 				return;
 			}
-			BigInteger total_combinations = LitStrategy.comb(unknown_squares, this.game.minecount-sum_mines);
-			for(int i=0; i<lengths.size(); i++){
-				total_combinations = total_combinations.multiply(
-					this.subsets.get(i).minecount_occurrences[lengths.get(i)]
-				);
+			Integer id = this.hidden_index.get(t);
+			int mine_spaces = this.unknown_squares;
+			double weight = times;
+			if(id!=null){
+				if(this.mine[id]){
+					return;
+				}
 			}
-			total_lengths[sum_mines] = total_lengths[sum_mines].add(total_combinations);
-
-			for(int i=0; i<lengths.size(); i++){
-				BigInteger delta = total_combinations.divide(
-					this.subsets.get(i).minecount_occurrences[lengths.get(i)]
+			else{
+				//Chance this tile is one of the ones left empty
+				if(this.unknown_squares==0){
+					return;
+				}
+				weight *= (double)(this.unknown_squares-distributed_mines)/this.unknown_squares;
+				distributed_mines = Math.min(distributed_mines, this.unknown_squares-1);
+				mine_spaces--;
+			}
+			int known = 0;
+			int random = 0;
+			for(Game.Location n : LitStrategy.this.neighbors(t)){
+				int val = this.board[n.row][n.col];
+				Integer nid = this.hidden_index.get(n);
+				if(val==Game.MINE || (nid!=null && this.mine[nid])){
+					known++;
+				}
+				else if(val==Game.UNKNOWN && nid==null){
+					random++;
+				}
+			}
+			double[] numbers = this.number_weights.computeIfAbsent(t, (x)->new double[Game.MINE]);
+			for(int m=0; m<=random; m++){
+				double p = Math.exp(
+					this.logComb(random, m)
+					+this.logComb(mine_spaces-random, distributed_mines-m)
+					-this.logComb(mine_spaces, distributed_mines)
 				);
-				BigInteger[] multiplier = subset_count_multipliers.get(i);
-				multiplier[lengths.get(i)]=multiplier[lengths.get(i)].add(delta);
+				numbers[known+m] += weight*p;
 			}
-		});
-		this.subset_count_multipliers = subset_count_multipliers;
-
-		//Calculate probability of each tile being a mine
-		BigInteger total_combinations = BigInteger.ZERO;
-		for(BigInteger i : total_lengths){
-			total_combinations = total_combinations.add(i);
 		}
-		this.mine_probabilities = new HashMap<>();
-		for(int i=0; i<this.subsets.size(); i++){
-			Subset ss = this.subsets.get(i);
-			BigInteger[] multipliers = subset_count_multipliers.get(i);
-			for(Game.Location loc : ss.hidden_area){
-				BigInteger total_occurrences = BigInteger.ZERO;
-				for(int size=0; size<multipliers.length; size++){
-					total_occurrences = total_occurrences.add(
-						multipliers[size].multiply(
-							ss.mine_occurrences.get(size).get(loc)
-						)
-					);
+		public void finish(){
+			LitStrategy.this.mine_probabilities = new HashMap<>();
+			LitStrategy.this.number_probabilities = new HashMap<>();
+			LitStrategy.this.subset_count_multipliers = new ArrayList<>();
+			if(this.samples==0){
+				LitStrategy.this.approximate = true;
+				LitStrategy.this.estimateMineProbabilities();
+				return;
+			}
+			//Never quite 0 or 1, since probabilitySafeMoves would take that as certain
+			for(int h=0; h<this.hidden_tiles.length; h++){
+				double p = (double)this.mine_hits[h]/this.samples;
+				LitStrategy.this.mine_probabilities.put(this.hidden_tiles[h], Math.max(Double.MIN_VALUE, Math.min(Math.nextDown(1.0), p)));
+			}
+			if(this.unknown_squares>0){
+				double p = 0;
+				for(int d=0; d<this.distributed_hits.length; d++){
+					p += (double)this.distributed_hits[d]/this.samples*d/this.unknown_squares;
 				}
-				this.mine_probabilities.put(loc, LitStrategy.ratio(total_occurrences,total_combinations));
+				LitStrategy.this.mine_probabilities.put(null, Math.max(Double.MIN_VALUE, Math.min(Math.nextDown(1.0), p)));
 			}
-		}
-		//Probability of all the other tiles being mines, keyed as null
-		double unknown_probability = 0;
-		if(unknown_squares>0){
-			for(int i=0; i<total_lengths.length; i++){
-				double length_combinations = LitStrategy.ratio(total_lengths[i],total_combinations);
-				unknown_probability += (double)(this.game.minecount-i) / unknown_squares * length_combinations;
+			//Tiles away from the frontier only go by how many mines were left in each sample
+			for(int r=0; r<LitStrategy.this.game.height; r++){
+				for(int c=0; c<LitStrategy.this.game.width; c++){
+					Game.Location loc = Game.Location.of(r,c);
+					if(this.board[r][c]!=Game.UNKNOWN || this.number_weights.containsKey(loc)){
+						continue;
+					}
+					for(int d=0; d<this.distributed_hits.length; d++){
+						if(this.distributed_hits[d]>0){
+							Set<Game.Location> done = new HashSet<>();
+							this.recordNumbers(loc, d, this.distributed_hits[d], done);
+						}
+					}
+				}
+			}
+			for(Map.Entry<Game.Location, double[]> e : this.number_weights.entrySet()){
+				double[] weights = e.getValue();
+				double total = 0;
+				for(double w : weights){
+					total += w;
+				}
+				double[] probabilities = new double[Game.MINE];
+				if(total==0){
+					probabilities[0] = 1.0;
+				}
+				else{
+					for(int i=0; i<probabilities.length; i++){
+						probabilities[i] = weights[i]/total;
+					}
+				}
+				LitStrategy.this.number_probabilities.put(e.getKey(), probabilities);
+			}
+			for(int r=0; r<LitStrategy.this.game.height; r++){
+				for(int c=0; c<LitStrategy.this.game.width; c++){
+					if(this.board[r][c]==Game.UNKNOWN && !LitStrategy.this.number_probabilities.containsKey(Game.Location.of(r,c))){
+						//Only tiles that were a mine in every sample
+						double[] probabilities = new double[Game.MINE];
+						probabilities[0] = 1.0;
+						LitStrategy.this.number_probabilities.put(Game.Location.of(r,c), probabilities);
+					}
+				}
 			}
-			this.mine_probabilities.put(null, unknown_probability);
 		}
-
-
-		//System.out.println(this.mine_probabilities);
-
 	}
 
-
 	Map<Game.Location, double[]> number_probabilities;
 	protected void calculateNumberProbabilities(){
+		if(this.approximate){
+			//The guesses that need these are skipped too
+			this.number_probabilities = new HashMap<>();
+			return;
+		}
+		if(this.sampled){
+			return;
+		}
 		//Same setup used when calculating mine probabilities
 		final int[][] board = this.game.board;
 		int unknown = 0;
@@ -846,150 +2189,128 @@ public class LitStrategy implements Agent{
 				}
 			}
 		}
-		List<List<Integer>> subset_counts = new ArrayList<>();
+		//Each subset's possible mine counts as a polynomial with a coefficient of 1 for every count that can happen
+		final int minecount = this.game.minecount;
+		final int k = this.subsets.size();
+		List<BigInteger[]> possible_counts = new ArrayList<>();
 		for(Subset ss : this.subsets){
 			unknown -= ss.hidden_area.size();
-			List<Integer> counts = new ArrayList<>();
-			for(int i=0; i<ss.minecount_occurrences.length; i++){
-				if(!ss.minecount_occurrences[i].equals(BigInteger.ZERO)){
-					counts.add(i);
-				}
+			BigInteger[] possible = new BigInteger[ss.minecount_occurrences.length];
+			for(int i=0; i<possible.length; i++){
+				possible[i] = ss.minecount_occurrences[i].equals(BigInteger.ZERO) ? BigInteger.ZERO : BigInteger.ONE;
 			}
-			subset_counts.add(counts);
+			possible_counts.add(possible);
 		}
 		final int unknown_squares = unknown;
+		//Multiplying them counts the combinations of subset lengths for every total, same as with the mine probabilities
+		List<BigInteger[]> prefix = new ArrayList<>();
+		prefix.add(new BigInteger[]{BigInteger.ONE});
+		for(int i=0; i<k; i++){
+			prefix.add(LitStrategy.multiplyPolynomials(prefix.get(i), possible_counts.get(i), minecount));
+		}
+		BigInteger[][] suffix = new BigInteger[k+1][];
+		suffix[k] = new BigInteger[]{BigInteger.ONE};
+		for(int i=k-1; i>=0; i--){
+			suffix[i] = LitStrategy.multiplyPolynomials(possible_counts.get(i), suffix[i+1], minecount);
+		}
 
-		//Calculate number of times each tile contains each number
-		final Map<Game.Location, BigInteger[]> number_occurrences = new HashMap<>();
-		for(int r=0; r<this.game.height; r++){
-			for(int c=0; c<this.game.width; c++){
-				if(this.game.board[r][c]!=Game.UNKNOWN){
+		//Which subsets have an effect on each tile's number
+		Map<Game.Location, List<Integer>> touching_subsets = new HashMap<>();
+		for(int i=0; i<k; i++){
+			for(Game.Location loc : this.subsets.get(i).number_occurrences.get(0).keySet()){
+				if(board[loc.row][loc.col]!=Game.UNKNOWN){
+					//When reusing subsets, some tiles that have been flagged after its construction can still remain in here because it doesn't change the subset's identity
+					//Of course u don't want to consider guessing there but they can just be ignored
 					continue;
 				}
-				Game.Location loc = new Game.Location(r,c);
-				if(!number_occurrences.containsKey(loc)){
-					BigInteger[] arr = new BigInteger[Game.MINE];
-					Arrays.fill(arr, BigInteger.ZERO);
-					number_occurrences.put(loc, arr);
-				}
+				touching_subsets.computeIfAbsent(loc, (x)->new ArrayList<>()).add(i);
 			}
 		}
 
-		cartesianProduct(subset_counts, (List<Integer> lengths) -> {
-			Map<Game.Location, BigInteger[]> combination_numbers = new HashMap<>();
-			for(int i=0; i<lengths.size(); i++){
-				Map<Game.Location, BigInteger[]> subset_numbers = this.subsets.get(i).number_occurrences.get(lengths.get(i));
-				BigInteger mult = this.subset_count_multipliers.get(i)[lengths.get(i)];
-				for(Game.Location loc : subset_numbers.keySet()){
-					if(board[loc.row][loc.col]!=Game.UNKNOWN){
-						//When reusing subsets, some tiles that have been flagged after its construction can still remain in here because it doesn't change the subset's identity
-						//Of course u don't want to consider guessing there but they can just be ignored
-						continue;
+		//Tiles that no subset touches only differ by their flags and unaccounted neighbors, so those are only calculated once
+		Map<Integer, double[]> untouched_probabilities = new HashMap<>();
+		this.number_probabilities = new HashMap<>();
+		for(int r=0; r<this.game.height; r++){
+			for(int c=0; c<this.game.width; c++){
+				if(board[r][c]!=Game.UNKNOWN){
+					continue;
+				}
+				Game.Location loc = Game.Location.of(r,c);
+				int flag_shift = 0;
+				int random_shift = 0;
+				for(Game.Location n : this.neighbors(loc)){
+					int val = board[n.row][n.col];
+					if(val == Game.MINE){
+						flag_shift++;
 					}
-					BigInteger[] numbers = subset_numbers.get(loc);
-					BigInteger[] scaled_numbers = new BigInteger[numbers.length];
-					for(int j=0; j<scaled_numbers.length; j++){
-						scaled_numbers[j] = mult.multiply(numbers[j]);
-					}
-					if(combination_numbers.containsKey(loc)){
-						//Handling tiles affected by multiple subsets
-						BigInteger[] old_numbers = combination_numbers.get(loc);
-						BigInteger[] new_numbers = new BigInteger[old_numbers.length];
-						Arrays.fill(new_numbers, BigInteger.ZERO);
-						for(int x=0; x<scaled_numbers.length; x++){
-							for(int y=0; y<old_numbers.length; y++){
-								BigInteger n = scaled_numbers[x].multiply(old_numbers[y]);
-								if(!n.equals(BigInteger.ZERO)){
-									new_numbers[x+y] = new_numbers[x+y].add(n);
-								}
-							}
-						}
-						scaled_numbers = new_numbers;
+					else if(val==Game.UNKNOWN && !this.mine_probabilities.containsKey(n)){
+						random_shift++;
 					}
-					combination_numbers.put(loc, scaled_numbers);
 				}
-			}
-
-			//Adjust the numbers for the unaccounted tiles and the flags
-			int distributed_mines = this.game.minecount;
-			for(int x : lengths){
-				distributed_mines -= x;
-			}
-			for(int r=0; r<this.game.height; r++){
-				for(int c=0; c<this.game.width; c++){
-					if(this.game.board[r][c]!=Game.UNKNOWN){
-						continue;
+				int mine_spaces = unknown_squares-(this.mine_probabilities.containsKey(loc)?0:1);
+				List<Integer> touching = touching_subsets.get(loc);
+				if(touching==null){
+					int key = flag_shift*Game.MINE+random_shift;
+					double[] probabilities = untouched_probabilities.get(key);
+					if(probabilities==null){
+						BigInteger[] counts = new BigInteger[Game.MINE];
+						Arrays.fill(counts,BigInteger.ZERO);
+						counts[0] = BigInteger.ONE;
+						BigInteger[][] length_numbers = {counts};
+						probabilities = this.tileNumberProbabilities(length_numbers, prefix.get(k), flag_shift, random_shift, mine_spaces);
+						untouched_probabilities.put(key, probabilities);
 					}
-					Game.Location loc = new Game.Location(r,c);
-					int flag_shift = 0;
-					int random_shift = 0;
-					for(Game.Location n : this.neighbors(loc)){
-						int val = board[n.row][n.col];
-						if(val == Game.MINE){
-							flag_shift++;
-						}
-						else if(val==Game.UNKNOWN && !this.mine_probabilities.containsKey(n)){
-							random_shift++;
-						}
+					this.number_probabilities.put(loc, probabilities.clone());
+					continue;
+				}
+				//How many times the tile has each number given the total length of the subsets touching it
+				BigInteger[][] length_numbers = new BigInteger[1][Game.MINE];
+				Arrays.fill(length_numbers[0],BigInteger.ZERO);
+				length_numbers[0][0] = BigInteger.ONE;
+				for(int i : touching){
+					Subset ss = this.subsets.get(i);
+					BigInteger[] multipliers = this.subset_count_multipliers.get(i);
+					BigInteger[][] combined = new BigInteger[length_numbers.length+multipliers.length-1][Game.MINE];
+					for(BigInteger[] arr : combined){
+						Arrays.fill(arr,BigInteger.ZERO);
 					}
-
-					BigInteger[] counts = combination_numbers.get(loc);
-					if(counts==null){
-						counts = new BigInteger[Game.MINE];
-						Arrays.fill(counts,BigInteger.ZERO);
-						counts[0]=BigInteger.ONE;
-					}
-					BigInteger[] adjusted_counts = new BigInteger[counts.length];
-					Arrays.fill(adjusted_counts,BigInteger.ZERO);
-
-					int mine_spaces = unknown_squares-(this.mine_probabilities.containsKey(loc)?0:1);
-					int min_mines = Math.max(0, distributed_mines-(mine_spaces-random_shift));
-					random_shift = Math.min(random_shift, distributed_mines)-min_mines;
-
-					for(int mines = 0; mines<=random_shift; mines++){
-						BigInteger mines_ways = LitStrategy.hypergeometric_occurrences(mine_spaces, distributed_mines, random_shift, mines);
-						for(int i=0; i<counts.length; i++){
-							if(!counts[i].equals(BigInteger.ZERO)){
-								int adjusted_idx = i+flag_shift+min_mines+mines;
-								adjusted_counts[adjusted_idx] = adjusted_counts[adjusted_idx].add(
-									counts[i].multiply(mines_ways)
-								);
+					for(int length=0; length<multipliers.length; length++){
+						if(multipliers[length].equals(BigInteger.ZERO)){
+							continue;
+						}
+						BigInteger[] numbers = ss.number_occurrences.get(length).get(loc);
+						for(int x=0; x<numbers.length; x++){
+							if(numbers[x].equals(BigInteger.ZERO)){
+								continue;
+							}
+							BigInteger scaled = multipliers[length].multiply(numbers[x]);
+							for(int prev=0; prev<length_numbers.length; prev++){
+								for(int y=0; y<Game.MINE; y++){
+									if(!length_numbers[prev][y].equals(BigInteger.ZERO)){
+										combined[prev+length][x+y] = combined[prev+length][x+y].add(scaled.multiply(length_numbers[prev][y]));
+									}
+								}
 							}
 						}
 					}
-					combination_numbers.put(loc, adjusted_counts);
+					length_numbers = combined;
 				}
-			}
-			
-
-			//Add er to the tally
-			for(Game.Location loc : combination_numbers.keySet()){
-				BigInteger[] occurrences = number_occurrences.get(loc);
-				BigInteger[] local_occurrences = combination_numbers.get(loc);
-				for(int i=0; i<occurrences.length; i++){
-					occurrences[i] = occurrences[i].add(local_occurrences[i]);
+				//Every length combination of the other subsets goes along with those
+				BigInteger[] others;
+				if(touching.size()==1){
+					int i = touching.get(0);
+					others = LitStrategy.multiplyPolynomials(prefix.get(i), suffix[i+1], minecount);
 				}
-			}
-		});
-		
-		//Average out the number of occurrences to get probabilities
-		this.number_probabilities = new HashMap<>();
-		for(Game.Location loc : number_occurrences.keySet()){
-			BigInteger[] occurrences = number_occurrences.get(loc);
-			BigInteger total = BigInteger.ZERO;
-			for(int i=0; i<occurrences.length; i++){
-				total = total.add(occurrences[i]);
-			}
-			double[] probabilities = new double[occurrences.length];
-			if(total.equals(BigInteger.ZERO)){
-				probabilities[0]=1.0;
-			}
-			else{
-				for(int i=0; i<occurrences.length; i++){
-					probabilities[i] = LitStrategy.ratio(occurrences[i],total);
+				else{
+					others = new BigInteger[]{BigInteger.ONE};
+					for(int i=0; i<k; i++){
+						if(!touching.contains(i)){
+							others = LitStrategy.multiplyPolynomials(others, possible_counts.get(i), minecount);
+						}
+					}
 				}
+				this.number_probabilities.put(loc, this.tileNumberProbabilities(length_numbers, others, flag_shift, random_shift, mine_spaces));
 			}
-			this.number_probabilities.put(loc, probabilities);
 		}
 		
 		/*
@@ -1001,6 +2322,79 @@ public class LitStrategy implements Agent{
 		System.out.println("--");
 		throw new RuntimeException();*/
 	}
+	//Number probabilities for one tile from the number counts for each length of the subsets touching it
+	//and the number of length combinations of the other subsets, by adjusting for the unaccounted tiles and the flags
+	private double[] tileNumberProbabilities(BigInteger[][] length_numbers, BigInteger[] others, int flag_shift, int unaccounted, int mine_spaces){
+		final int minecount = this.game.minecount;
+		BigInteger[] occurrences = new BigInteger[Game.MINE];
+		Arrays.fill(occurrences,BigInteger.ZERO);
+		BigInteger[] counts = new BigInteger[Game.MINE];
+		for(int sum_mines=0; sum_mines<=minecount; sum_mines++){
+			//Total counts over all the length combinations with this many mines in the subsets
+			Arrays.fill(counts,BigInteger.ZERO);
+			boolean any = false;
+			for(int length=0; length<length_numbers.length && length<=sum_mines; length++){
+				int rest = sum_mines-length;
+				if(rest>=others.length || others[rest].equals(BigInteger.ZERO)){
+					continue;
+				}
+				for(int i=0; i<Game.MINE; i++){
+					if(!length_numbers[length][i].equals(BigInteger.ZERO)){
+						counts[i] = counts[i].add(length_numbers[length][i].multiply(others[rest]));
+						any = true;
+					}
+				}
+			}
+			if(!any){
+				continue;
+			}
+
+			int distributed_mines = minecount-sum_mines;
+			int min_mines = Math.max(0, distributed_mines-(mine_spaces-unaccounted));
+			int random_shift = Math.min(unaccounted, distributed_mines)-min_mines;
+			for(int mines = 0; mines<=random_shift; mines++){
+				BigInteger mines_ways = LitStrategy.hypergeometric_occurrences(mine_spaces, distributed_mines, random_shift, mines);
+				for(int i=0; i<counts.length; i++){
+					if(!counts[i].equals(BigInteger.ZERO)){
+						int adjusted_idx = i+flag_shift+min_mines+mines;
+						occurrences[adjusted_idx] = occurrences[adjusted_idx].add(
+							counts[i].multiply(mines_ways)
+						);
+					}
+				}
+			}
+		}
+
+		//Average out the number of occurrences to get probabilities
+		BigInteger total = BigInteger.ZERO;
+		for(int i=0; i<occurrences.length; i++){
+			total = total.add(occurrences[i]);
+		}
+		double[] probabilities = new double[occurrences.length];
+		if(total.equals(BigInteger.ZERO)){
+			probabilities[0]=1.0;
+		}
+		else{
+			for(int i=0; i<occurrences.length; i++){
+				probabilities[i] = LitStrategy.ratio(occurrences[i],total);
+			}
+		}
+		return probabilities;
+	}
+	//Product of 2 polynomials given as coefficient arrays, leaving out any terms of higher degree than max_degree
+	private static BigInteger[] multiplyPolynomials(BigInteger[] a, BigInteger[] b, int max_degree){
+		BigInteger[] product = new BigInteger[Math.max(1, Math.min(a.length+b.length-1, max_degree+1))];
+		Arrays.fill(product, BigInteger.ZERO);
+		for(int i=0; i<a.length && i<product.length; i++){
+			if(a[i].equals(BigInteger.ZERO)){
+				continue;
+			}
+			for(int j=0; j<b.length && i+j<product.length; j++){
+				product[i+j] = product[i+j].add(a[i].multiply(b[j]));
+			}
+		}
+		return product;
+	}
 	protected static <T> void cartesianProduct(List<List<T>> counts, Consumer<List<T>> callback){
 		LitStrategy.cartesianProductRecursive(counts, callback, new ArrayList<>());
 	}
@@ -1018,27 +2412,49 @@ public class LitStrategy implements Agent{
 	}
 
 	//Caching all these "n choose r" results really makes a difference
-	private static final List<BigInteger> comb_cache = new ArrayList<>();
+	//Rows of pascal's triangle are never modified after being published, so lookups don't need any locking
+	private static volatile BigInteger[][] comb_table = new BigInteger[0][];
+	//The table grows with the square of this, so past it they just get calculated each time
+	private static final int COMB_TABLE_SIZE = 512;
 	private static BigInteger comb(int n, int r){
-		int index = (n*(n+1)/2)+r;
-		if(comb_cache.size()<=index){
-			//Triangular root of the size to determine what's already been done
-			int previous_n = ((int)Math.sqrt(comb_cache.size()*8+1)-1)/2-1;
-			for(int curr_n = previous_n+1; curr_n<=n; curr_n++){
-        		BigInteger res = BigInteger.ONE;
-        		comb_cache.add(res);
+		if(n>=COMB_TABLE_SIZE){
+			BigInteger ans = BigInteger.ONE;
+			r = Math.min(r, n-r);
+			for(int i=1; i<=r; i++){
+				ans = ans.multiply(BigInteger.valueOf(n - i + 1)).divide(BigInteger.valueOf(i));
+			}
+			return ans;
+		}
+		BigInteger[][] table = comb_table;
+		if(table.length<=n){
+			table = LitStrategy.reserveComb(n);
+		}
+		return table[n][r];
+	}
+	//Makes sure every row up to n is in the table, only 1 thread does the work if several of them need it at once
+	private static BigInteger[][] reserveComb(int n){
+		synchronized(LitStrategy.class){
+			BigInteger[][] table = comb_table;
+			if(table.length>n){
+				return table;
+			}
+			BigInteger[][] grown = Arrays.copyOf(table, n+1);
+			for(int curr_n = table.length; curr_n<=n; curr_n++){
+				BigInteger[] row = new BigInteger[curr_n+1];
+				row[0] = BigInteger.ONE;
 				for(int i=1; i<=curr_n; i++){
 					if(i<=curr_n-i){
-			            res = res.multiply(BigInteger.valueOf(curr_n - i + 1)).divide(BigInteger.valueOf(i));
-	        			comb_cache.add(res);
-	        		}
-	        		else{
-	        			comb_cache.add(comb_cache.get(comb_cache.size() + curr_n - 2*i ));
-	        		}
-        		}
-        	}
-        }
-        return comb_cache.get(index);
+						row[i] = row[i-1].multiply(BigInteger.valueOf(curr_n - i + 1)).divide(BigInteger.valueOf(i));
+					}
+					else{
+						row[i] = row[curr_n-i];
+					}
+				}
+				grown[curr_n] = row;
+			}
+			comb_table = grown;
+			return grown;
+		}
 	}
 	private static BigInteger hypergeometric_occurrences(int trials, int successes, int observed, int observed_successes){
 		//Given there are N minesweeper squares and i know K of them are mines
@@ -1097,7 +2513,7 @@ public class LitStrategy implements Agent{
 			if(entry.getKey() == null){
 				for(int r=0; r<this.game.height; r++){
 					for(int c=0; c<this.game.width; c++){
-						Game.Location loc = new Game.Location(r,c);
+						Game.Location loc = Game.Location.of(r,c);
 						if(this.game.board[r][c]==Game.UNKNOWN && !this.mine_probabilities.containsKey(loc)){
 							method.accept(loc);
 						}
@@ -1111,6 +2527,9 @@ public class LitStrategy implements Agent{
 	}
 
 	protected void takeForcedGuesses(){
+		if(this.approximate){
+			return;
+		}
 		for(Subset ss : this.subsets){
 			//Make sure subset doesnt have multiple valid lengths
 			if(LitStrategy.countNonzero(ss.minecount_occurrences)!=1){
@@ -1214,7 +2633,7 @@ public class LitStrategy implements Agent{
 	}
 
 	protected void probabilityBestGuess(){
-		if(this.mine_probabilities.size()==0){
+		if(this.approximate || this.mine_probabilities.size()==0){
 			return;
 		}
 		List<Map.Entry<Game.Location,Double>> candidates = this.mine_probabilities.entrySet().stream().filter((Map.Entry<Game.Location,Double> e)->
@@ -1229,6 +2648,7 @@ public class LitStrategy implements Agent{
 			Double.compare(a.getValue(),b.getValue())
 		);
 		double best_safety = candidates.get(0).getValue();
+		this.refreshProgressCache();
 		//Maybe there is a better threshold, more tuning may be needed
 		double safety_threshold = best_safety+0.1;
 
@@ -1289,7 +2709,7 @@ public class LitStrategy implements Agent{
 		Set<Game.Location> candidates = new HashSet<>();
 		for(int r=0; r<this.game.height; r++){
 			for(int c=0; c<this.game.width; c++){
-				Game.Location loc = new Game.Location(r,c);
+				Game.Location loc = Game.Location.of(r,c);
 				if(this.game.board[r][c]==Game.UNKNOWN && !this.mine_probabilities.containsKey(loc)){
 
 					int hidden = 0;
@@ -1329,7 +2749,7 @@ public class LitStrategy implements Agent{
 			if(weight==0.0){
 				continue;
 			}
-			if(this.testProgress(loc, number)){
+			if(this.cachedProgress(loc, number)){
 				answer += weight;
 			}
 		}
@@ -1339,54 +2759,121 @@ public class LitStrategy implements Agent{
 		System.out.println(answer);*/
 		return answer;
 	}
+	//testProgress results from earlier guesses, 0 for not tested yet, 1 for no progress and 2 for progress
+	//They only depend on the tiles within PROGRESS_RADIUS so they stay good until one of those changes
+	private static final int PROGRESS_RADIUS = 4;
+	protected final Map<Game.Location, byte[]> progress_cache = new HashMap<>();
+	private int progress_version = 0;
+	private void refreshProgressCache(){
+		this.game.forEachChangedSince(this.progress_version, (Game.Location changed) -> {
+			for(int r=Math.max(0, changed.row-PROGRESS_RADIUS); r<=Math.min(this.game.height-1, changed.row+PROGRESS_RADIUS); r++){
+				for(int c=Math.max(0, changed.col-PROGRESS_RADIUS); c<=Math.min(this.game.width-1, changed.col+PROGRESS_RADIUS); c++){
+					this.progress_cache.remove(Game.Location.of(r,c));
+				}
+			}
+		});
+		this.progress_version = this.game.getVersion();
+	}
+	private boolean cachedProgress(Game.Location loc, int number){
+		byte[] results = this.progress_cache.computeIfAbsent(loc, (Game.Location k)->new byte[Game.MINE]);
+		if(results[number]!=0){
+			if(PROFILE){
+				Profile.progress_cache_hits.increment();
+			}
+			return results[number]==2;
+		}
+		long start = PROFILE ? System.nanoTime() : 0;
+		boolean progress = this.testProgress(loc, number);
+		if(PROFILE){
+			Profile.record(Profile.test_progress, progress ? 1 : 0, System.nanoTime()-start);
+		}
+		results[number] = (byte)(progress ? 2 : 1);
+		return progress;
+	}
+	//Whether opening loc and finding number there would let singlePointSearch or pairwiseSearch open something
+	//By the time guesses get made those found nothing on the real board, so only the numbers that can see the new one matter:
+	//the new number and the ones around it, by themselves or paired with the numbers near them
+	//The board is never written to, the new number is only seen through speculativeValue
 	private boolean testProgress(Game.Location loc, int number){
-		List<Subset> backup_subsets = new ArrayList<>(this.subsets);
-		Map<Game.Location, Double> backup_mine_probabilities = this.mine_probabilities;
-		Map<Game.Location, double[]> backup_number_probabilities = this.number_probabilities;
-
-		this.game.board[loc.row][loc.col] = number;
-		boolean answer = false;
-
-		RuntimeException err = null;
-
-		this.moves.push(null);
-		for(Runnable step : new Runnable[]{
-			this::singlePointSearch,
-			() -> this.pairwiseSearch(this::neighbors),
-			() -> this.pairwiseSearch(this::second_neighbors),
-		}){
-			try{
-				step.run();
+		List<Game.Location> changed = new ArrayList<>();
+		changed.add(loc);
+		for(Game.Location n : this.neighbors(loc)){
+			if(LitStrategy.isNumber(this.speculativeValue(loc, number, n))){
+				changed.add(n);
 			}
-			catch(RuntimeException e){
-				err = e;
-				break;
+		}
+		for(Game.Location a : changed){
+			if(this.speculativeSinglePoint(loc, number, a)){
+				return true;
 			}
-			while(this.moves.peek()!=null){
-				Agent.Action move = this.moves.pop();
-				if(move.type == Agent.Action.Type.OPEN){
-					answer = true;
-					break;
+			for(Game.Location[] neighborhood : new Game.Location[][]{this.neighbors(a), this.second_neighbors(a)}){
+				for(Game.Location b : neighborhood){
+					if(LitStrategy.isNumber(this.speculativeValue(loc, number, b)) && this.speculativePair(loc, number, a, b)){
+						return true;
+					}
 				}
 			}
 		}
-		for(
-			Agent.Action move = this.moves.pop();
-			move!=null;
-			move=this.moves.pop()
-		){}
-
-		this.game.board[loc.row][loc.col] = Game.UNKNOWN;
-
-		this.subsets = backup_subsets;
-		this.mine_probabilities = backup_mine_probabilities;
-		this.number_probabilities = backup_number_probabilities;
-
-		if(err!=null){
-			throw err;
+		return false;
+	}
+	private int speculativeValue(Game.Location loc, int number, Game.Location tile){
+		return tile.equals(loc) ? number : this.game.board[tile.row][tile.col];
+	}
+	private static boolean isNumber(int value){
+		return value!=Game.UNKNOWN && value!=Game.MINE;
+	}
+	//Same as checkSinglePoint, but only says if it would open anything
+	private boolean speculativeSinglePoint(Game.Location loc, int number, Game.Location tile){
+		int mines = this.speculativeValue(loc, number, tile);
+		int unknown = 0;
+		for(Game.Location n : this.neighbors(tile)){
+			int val = this.speculativeValue(loc, number, n);
+			if(val==Game.MINE){
+				mines--;
+			}
+			else if(val==Game.UNKNOWN){
+				unknown++;
+			}
 		}
-
-		return answer;
+		return unknown>0 && mines==0;
+	}
+	//Same as checkPair, but only says if it would open anything
+	private boolean speculativePair(Game.Location loc, int number, Game.Location loc1, Game.Location loc2){
+		int shared = 0;
+		int mines1 = this.speculativeValue(loc, number, loc1);
+		int unique1 = 0;
+		for(Game.Location n1 : this.neighbors(loc1)){
+			switch(this.speculativeValue(loc, number, n1)){
+			case Game.MINE:
+				mines1--;
+				break;
+			case Game.UNKNOWN:
+				unique1++;
+				for(Game.Location n2 : this.neighbors(loc2)){
+					if(n1.equals(n2)){
+						shared++;
+						unique1--;
+						break;
+					}
+				}
+			}
+		}
+		if(shared==0){
+			return false;
+		}
+		int mines2 = this.speculativeValue(loc, number, loc2);
+		int unique2 = -1*shared;
+		for(Game.Location n2 : this.neighbors(loc2)){
+			switch(this.speculativeValue(loc, number, n2)){
+			case Game.MINE:
+				mines2--;
+				break;
+			case Game.UNKNOWN:
+				unique2++;
+			}
+		}
+		int min = Math.max(Math.max(mines1-unique1, mines2-unique2),0);
+		return (min==mines1 && unique1>0) || (min==mines2 && unique2>0);
 	}
 
 	protected void randomProbabilityGuess(){
@@ -1414,8 +2901,8 @@ public class LitStrategy implements Agent{
 		CornerGuesser cg = new CornerGuesser();
 		for(int r=0; r<this.game.height; r++){
 			for(int c=0; c<this.game.width; c++){
-				if(this.game.board[r][c]==Game.UNKNOWN && !this.mine_probabilities.containsKey(new Game.Location(r,c))){
-					cg.add(new Game.Location(r,c));
+				if(this.game.board[r][c]==Game.UNKNOWN && !this.mine_probabilities.containsKey(Game.Location.of(r,c))){
+					cg.add(Game.Location.of(r,c));
 				}
 			}
 		}
@@ -23,11 +23,12 @@ public class SinglePoint implements Agent{
 				if(board[r][c]==Game.UNKNOWN || board[r][c]==Game.MINE){
 					continue;
 				}
-				Game.Location pos = new Game.Location(r,c);
+				final int mask = this.game.neighborMask(r,c);
 				int mines = 0;
 				int unknown = 0;
-				for(Game.Location loc : this.neighbors(pos)){
-					int val = board[loc.row][loc.col];
+				for(int m=mask; m!=0; m&=m-1){
+					int d = Integer.numberOfTrailingZeros(m);
+					int val = board[r+Game.neighborRow(d)][c+Game.neighborCol(d)];
 					if(val==Game.MINE){
 						mines++;
 					}
@@ -39,18 +40,16 @@ public class SinglePoint implements Agent{
 					continue;
 				}
 				int unknown_mines = board[r][c]-mines;
-				if(unknown_mines==0){
-					for(Game.Location loc : this.neighbors(pos)){
-						if(board[loc.row][loc.col]==Game.UNKNOWN){
-							return new Agent.Action(Agent.Action.Type.OPEN, loc);
-						}
-					}
+				if(unknown_mines!=0 && unknown_mines!=unknown){
+					continue;
 				}
-				else if(unknown_mines==unknown){
-					for(Game.Location loc : this.neighbors(pos)){
-						if(board[loc.row][loc.col]==Game.UNKNOWN){
-							return new Agent.Action(Agent.Action.Type.FLAG, loc);
-						}
+				for(int m=mask; m!=0; m&=m-1){
+					int d = Integer.numberOfTrailingZeros(m);
+					int nr = r+Game.neighborRow(d);
+					int nc = c+Game.neighborCol(d);
+					if(board[nr][nc]==Game.UNKNOWN){
+						Agent.Action.Type type = unknown_mines==0 ? Agent.Action.Type.OPEN : Agent.Action.Type.FLAG;
+						return new Agent.Action(type, Game.Location.of(nr,nc));
 					}
 				}
 			}
@@ -61,26 +60,10 @@ public class SinglePoint implements Agent{
 		for(int r=0; r<this.game.height; r++){
 			for(int c=0; c<this.game.width; c++){
 				if(board[r][c]==Game.UNKNOWN){
-					unknowns.add(new Game.Location(r,c));
+					unknowns.add(Game.Location.of(r,c));
 				}
 			}
 		}
 		return new Agent.Action(Agent.Action.Type.OPEN, unknowns.get(new Random().nextInt(unknowns.size())));
 	}
-
-	private boolean in_bounds(Game.Location pos){
-		return pos.row>=0 && pos.col>=0 && pos.row<this.game.height && pos.col<this.game.width;
-	}
-	private Game.Location[] neighbors(Game.Location pos){
-		List<Game.Location> ans = new ArrayList<>();
-		for(int r=-1; r<=1; r++){
-			for(int c=-1; c<=1; c++){
-				Game.Location n = new Game.Location(pos.row+r, pos.col+c);
-				if((r|c)!=0 && this.in_bounds(n)){
-					ans.add(n);
-				}
-			}
-		}
-		return ans.toArray(new Game.Location[0]);
-	}
 }
\ No newline at end of file